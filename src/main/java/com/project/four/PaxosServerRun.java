@@ -1,8 +1,11 @@
 package com.project.four;
 
+import com.project.four.implementation.ShardedStoreServiceImpl;
 import com.project.four.interfaces.AcceptorInterface;
 import com.project.four.interfaces.LearnerInterface;
+import com.project.four.server.HashRing;
 import com.project.four.server.PaxosServer;
+import com.project.four.server.RangeMigrator;
 import com.project.four.server.ProjectEnums.ServiceKeys;
 import com.project.four.server.ServerConfig;
 import com.project.four.utills.*;
@@ -12,6 +15,7 @@ import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -24,9 +28,10 @@ import java.util.concurrent.Future;
  * Class responsible for running multiple instances of Paxos servers and setting up communication between them.
  */
 public class PaxosServerRun {
-    public static void restartServer (int index, ArchConf fullConf, List<PaxosServer> participantList, List<AcceptorInterface> acceptorInterfaces, List<LearnerInterface> learnerInterfaces, Object stopServer) throws IOException, NotBoundException, BusinessException {
+    public static void restartServer (int index, int groupId, ArchConf fullConf, List<PaxosServer> participantList, List<AcceptorInterface> acceptorInterfaces, List<LearnerInterface> learnerInterfaces, Object stopServer) throws IOException, NotBoundException, BusinessException {
         ServerNetConf participantConf = fullConf.getParticipantsConf().get(index);
         ServerConfig sConfig = new ServerConfig();
+        sConfig.setGroupId(groupId);
         sConfig.setNumServers(participantList.size());
         sConfig.setRpcPort(participantConf.getPort());
         sConfig.setServerHost(participantConf.getHost());
@@ -36,6 +41,24 @@ public class PaxosServerRun {
         sConfig.setDelay(fullConf.getDelay());
         sConfig.setRequestAttempts(fullConf.getRequestAttempts());
         sConfig.setAcceptRandomErrorProbability(fullConf.getAcceptRandomErrorProbability());
+        sConfig.setMultiPaxos(fullConf.isMultiPaxos());
+        sConfig.setBatchSize(fullConf.getBatchSize());
+        sConfig.setBatchDelay(fullConf.getBatchDelay());
+        sConfig.setPipelineWindow(fullConf.getPipelineWindow());
+        sConfig.setChosenNotify(fullConf.isChosenNotify());
+        sConfig.setLeaseDuration(fullConf.getLeaseDuration());
+        sConfig.setPrepareQuorum(fullConf.getPrepareQuorum());
+        sConfig.setAcceptQuorum(fullConf.getAcceptQuorum());
+        sConfig.setThriftyAccept(fullConf.isThriftyAccept());
+        sConfig.setLeaderlessCommit(fullConf.isLeaderlessCommit());
+        sConfig.setRotatingSlots(fullConf.isRotatingSlots());
+        sConfig.setGroups(fullConf.getGroups());
+        sConfig.setWalDirectory(fullConf.getWalDirectory());
+        sConfig.setWalSegmentSize(fullConf.getWalSegmentSize());
+        sConfig.setSnapshotInterval(fullConf.getSnapshotInterval());
+        sConfig.setAntiEntropyInterval(fullConf.getAntiEntropyInterval());
+        sConfig.setHeartbeatInterval(fullConf.getHeartbeatInterval());
+        sConfig.setSuspicionThreshold(fullConf.getSuspicionThreshold());
         // Create and initialize a PaxosServer instance
         PaxosServer server = new PaxosServer(sConfig, stopServer);
         server.setServerId(index);
@@ -61,8 +84,8 @@ public class PaxosServerRun {
         participantList.set(index, server);
         // Lookup Acceptor and Learner services via RMI
         Registry registry = LocateRegistry.getRegistry(sConfig.getServerHost(), sConfig.getRpcPort());
-        AcceptorInterface acceptorInterface = (AcceptorInterface) registry.lookup(ServiceKeys.AcceptorService.toString());
-        LearnerInterface learnerInterface = (LearnerInterface) registry.lookup(ServiceKeys.LearnerService.toString());
+        AcceptorInterface acceptorInterface = (AcceptorInterface) registry.lookup(ServiceKeys.AcceptorService.forGroup(groupId));
+        LearnerInterface learnerInterface = (LearnerInterface) registry.lookup(ServiceKeys.LearnerService.forGroup(groupId));
         acceptorInterfaces.set(index, acceptorInterface);
         learnerInterfaces.set(index, learnerInterface);
 
@@ -84,12 +107,44 @@ public class PaxosServerRun {
             }
             acceptorInterfaces.get(i).addNewNode(acceptorInterface, learnerInterface);
         }
+        // Fetch the data the node missed while it was down
+        server.catchUpAsync();
 //        for (AcceptorInterface acceptorInterface1 : acceptorInterfaces) {
 //
 //            acceptorInterface1.addNewNode(acceptorInterface, learnerInterface);
 //        }
 
     }
+
+    /**
+     * Binds the client entry point of a node hosting several groups, replacing the one of group 0.
+     *
+     * @param index             Index of the node.
+     * @param fullConf          Static configuration.
+     * @param groupParticipants Replicas of every group, indexed by group id and node index.
+     * @param routers           Routers bound so far, indexed by node index.
+     * @throws IOException If the router can not be exported or bound.
+     */
+    public static void bindRouter (int index, ArchConf fullConf, List<List<PaxosServer>> groupParticipants, List<ShardedStoreServiceImpl> routers) throws IOException {
+        ServerNetConf participantConf = fullConf.getParticipantsConf().get(index);
+        List<PaxosServer> localGroups = new ArrayList<PaxosServer>();
+        for (List<PaxosServer> participants : groupParticipants) {
+            localGroups.add(participants.get(index));
+        }
+        // Every node keeps its own routing hint, it follows the ranges applied by the local replicas
+        HashRing ring = new HashRing(localGroups.size());
+        RangeMigrator migrator = new RangeMigrator(localGroups, ring);
+        for (PaxosServer group : localGroups) {
+            group.setRangeMigrator(migrator);
+        }
+        ShardedStoreServiceImpl router = new ShardedStoreServiceImpl(localGroups, ring);
+        Registry registry = LocateRegistry.getRegistry(participantConf.getHost(), participantConf.getPort());
+        registry.rebind(ServiceKeys.StoreService.toString(), router);
+        ShardedStoreServiceImpl previous = routers.set(index, router);
+        if (previous != null) {
+            UnicastRemoteObject.unexportObject(previous, true);
+        }
+    }
     /**
      * Runs the Paxos server with the specified configuration.
      *
@@ -101,72 +156,112 @@ public class PaxosServerRun {
         final Object stopServer = new Object();
         // Read the static configuration for Paxos
         final ArchConf fullConf = PaxosServer.readStaticConf();
-        // List to store Paxos server instances
-        final List<PaxosServer> participantsList = new ArrayList<PaxosServer>();
-        int counter = 0;
         int numServers = fullConf.getParticipantsConf().size();
+        int numGroups = Math.max(1, fullConf.getGroups());
+        // Paxos server instances of every group, indexed by group id and node index
+        final List<List<PaxosServer>> groupParticipants = new ArrayList<List<PaxosServer>>();
+        final List<List<AcceptorInterface>> groupAcceptors = new ArrayList<List<AcceptorInterface>>();
+        final List<List<LearnerInterface>> groupLearners = new ArrayList<List<LearnerInterface>>();
         // Testing Async Executor
         ExecutorService executors = Executors.newCachedThreadPool();
         List<Future<?>> futureList = new LinkedList<Future<?>>();
-        // Starting all participants
-        for (ServerNetConf participantConf: fullConf.getParticipantsConf()) {
-            ServerConfig sConfig = new ServerConfig();
-            sConfig.setNumServers(numServers);
-            sConfig.setRpcPort(participantConf.getPort());
-            sConfig.setServerHost(participantConf.getHost());
-            sConfig.setServiceKey(ServiceKeys.StoreService);
-            sConfig.setServerId(counter);
-            sConfig.setLeaderBased(fullConf.isLeaderBased());
-            sConfig.setDelay(fullConf.getDelay());
-            sConfig.setRequestAttempts(fullConf.getRequestAttempts());
-            sConfig.setAcceptRandomErrorProbability(fullConf.getAcceptRandomErrorProbability());
-            // Create and initialize a PaxosServer instance
-            PaxosServer server = new PaxosServer(sConfig, stopServer);
-            server.setServerId(counter);
-            participantsList.add(server);
-            // Set Self as leader in first server as first will be the leader at startup
-            if (counter == 0 && fullConf.isLeaderBased()) {
-                server.setLeaderAccept((AcceptorInterface) server);
-                server.setLeaderLearn((LearnerInterface) server);
-                server.setLeaderServerId(0);
+        // Group 0 has to start first on every node, it creates the registry the other groups bind to
+        for (int groupId = 0; groupId < numGroups; groupId++) {
+            // List to store Paxos server instances
+            final List<PaxosServer> participantsList = new ArrayList<PaxosServer>();
+            int counter = 0;
+            // Leaders of the groups are spread over the nodes
+            int leaderId = groupId % numServers;
+            // Starting all participants
+            for (ServerNetConf participantConf: fullConf.getParticipantsConf()) {
+                ServerConfig sConfig = new ServerConfig();
+                sConfig.setGroupId(groupId);
+                sConfig.setNumServers(numServers);
+                sConfig.setRpcPort(participantConf.getPort());
+                sConfig.setServerHost(participantConf.getHost());
+                sConfig.setServiceKey(ServiceKeys.StoreService);
+                sConfig.setServerId(counter);
+                sConfig.setLeaderBased(fullConf.isLeaderBased());
+                sConfig.setDelay(fullConf.getDelay());
+                sConfig.setRequestAttempts(fullConf.getRequestAttempts());
+                sConfig.setAcceptRandomErrorProbability(fullConf.getAcceptRandomErrorProbability());
+                sConfig.setMultiPaxos(fullConf.isMultiPaxos());
+                sConfig.setBatchSize(fullConf.getBatchSize());
+                sConfig.setBatchDelay(fullConf.getBatchDelay());
+                sConfig.setPipelineWindow(fullConf.getPipelineWindow());
+                sConfig.setChosenNotify(fullConf.isChosenNotify());
+                sConfig.setLeaseDuration(fullConf.getLeaseDuration());
+                sConfig.setPrepareQuorum(fullConf.getPrepareQuorum());
+                sConfig.setAcceptQuorum(fullConf.getAcceptQuorum());
+                sConfig.setThriftyAccept(fullConf.isThriftyAccept());
+                sConfig.setLeaderlessCommit(fullConf.isLeaderlessCommit());
+                sConfig.setRotatingSlots(fullConf.isRotatingSlots());
+                sConfig.setGroups(fullConf.getGroups());
+                sConfig.setWalDirectory(fullConf.getWalDirectory());
+                sConfig.setWalSegmentSize(fullConf.getWalSegmentSize());
+                sConfig.setSnapshotInterval(fullConf.getSnapshotInterval());
+                sConfig.setAntiEntropyInterval(fullConf.getAntiEntropyInterval());
+                sConfig.setHeartbeatInterval(fullConf.getHeartbeatInterval());
+                sConfig.setSuspicionThreshold(fullConf.getSuspicionThreshold());
+                // Create and initialize a PaxosServer instance
+                PaxosServer server = new PaxosServer(sConfig, stopServer);
+                server.setServerId(counter);
+                participantsList.add(server);
+                // Set Self as leader in the group's first leader
+                if (counter == leaderId && fullConf.isLeaderBased()) {
+                    server.setLeaderAccept((AcceptorInterface) server);
+                    server.setLeaderLearn((LearnerInterface) server);
+                    server.setLeaderServerId(leaderId);
+                }
+                counter++;
             }
-            counter++;
-        }
 
-        // Starting RMI service for each node
-        final List<AcceptorInterface> acceptorInterfaces = new LinkedList<AcceptorInterface>();
-        final List<LearnerInterface> learnerInterfaces = new LinkedList<LearnerInterface>();
-        for (int i = 0 ; i < participantsList.size() ; i++) {
-            PaxosServer server = participantsList.get(i);
-            ServerConfig config = server.getsConfig();
-            // Lookup Acceptor and Learner services via RMI
-            Registry registry = LocateRegistry.getRegistry(config.getServerHost(), config.getRpcPort());
-            AcceptorInterface acceptorInterface = (AcceptorInterface) registry.lookup(ServiceKeys.AcceptorService.toString());
-            LearnerInterface learnerInterface = (LearnerInterface) registry.lookup(ServiceKeys.LearnerService.toString());
-            acceptorInterfaces.add(acceptorInterface);
-            learnerInterfaces.add(learnerInterface);
-        }
+            // Starting RMI service for each node
+            final List<AcceptorInterface> acceptorInterfaces = new LinkedList<AcceptorInterface>();
+            final List<LearnerInterface> learnerInterfaces = new LinkedList<LearnerInterface>();
+            for (int i = 0 ; i < participantsList.size() ; i++) {
+                PaxosServer server = participantsList.get(i);
+                ServerConfig config = server.getsConfig();
+                // Lookup Acceptor and Learner services via RMI
+                Registry registry = LocateRegistry.getRegistry(config.getServerHost(), config.getRpcPort());
+                AcceptorInterface acceptorInterface = (AcceptorInterface) registry.lookup(ServiceKeys.AcceptorService.forGroup(groupId));
+                LearnerInterface learnerInterface = (LearnerInterface) registry.lookup(ServiceKeys.LearnerService.forGroup(groupId));
+                acceptorInterfaces.add(acceptorInterface);
+                learnerInterfaces.add(learnerInterface);
+            }
 
-        AcceptorInterface leaderAccept = acceptorInterfaces.get(0);
-        LearnerInterface leaderLearner = learnerInterfaces.get(0);
-        // Starting RMI network between Paxos nodes
-        for (int i = 0 ; i < participantsList.size() ; i++) {
-            PaxosServer server = participantsList.get(i);
-            for (int j = 0 ; j < participantsList.size() ; j++) {
-                if (i == j) {
-                    server.getAcceptors().add((AcceptorInterface) server);
-                    server.getLearners().add((LearnerInterface) server);
-                } else {
-                    server.getAcceptors().add(acceptorInterfaces.get(j));
-                    server.getLearners().add(learnerInterfaces.get(j));
-                }
-                // Assigning first server as leader to nodes other than leader itself
-                if (i != 0 && fullConf.isLeaderBased()) {
-                    server.setLeaderAccept(leaderAccept);
-                    server.setLeaderLearn(leaderLearner);
-                    server.setLeaderServerId(0);
+            AcceptorInterface leaderAccept = acceptorInterfaces.get(leaderId);
+            LearnerInterface leaderLearner = learnerInterfaces.get(leaderId);
+            // Starting RMI network between Paxos nodes
+            for (int i = 0 ; i < participantsList.size() ; i++) {
+                PaxosServer server = participantsList.get(i);
+                for (int j = 0 ; j < participantsList.size() ; j++) {
+                    if (i == j) {
+                        server.getAcceptors().add((AcceptorInterface) server);
+                        server.getLearners().add((LearnerInterface) server);
+                    } else {
+                        server.getAcceptors().add(acceptorInterfaces.get(j));
+                        server.getLearners().add(learnerInterfaces.get(j));
+                    }
+                    // Assigning the group's first leader to nodes other than leader itself
+                    if (i != leaderId && fullConf.isLeaderBased()) {
+                        server.setLeaderAccept(leaderAccept);
+                        server.setLeaderLearn(leaderLearner);
+                        server.setLeaderServerId(leaderId);
+                    }
                 }
             }
+            groupParticipants.add(participantsList);
+            groupAcceptors.add(acceptorInterfaces);
+            groupLearners.add(learnerInterfaces);
+        }
+        // Routing client calls to the group owning the key
+        final List<ShardedStoreServiceImpl> routers = new ArrayList<ShardedStoreServiceImpl>();
+        for (int i = 0 ; i < numServers ; i++) {
+            routers.add(null);
+            if (numGroups > 1) {
+                bindRouter(i, fullConf, groupParticipants, routers);
+            }
         }
         // Restart Server thread. This thread will restart a node if it finds it inactive, it runs every e times @delay millisecs.
         if (fullConf.isAllowNodeRestart()) {
@@ -180,16 +275,25 @@ public class PaxosServerRun {
                             // Ignore
                         }
                         // Check each server status and restart it if found inactive
-                        int counter = -1;
-                        for (AcceptorInterface acceptorInterface: acceptorInterfaces) {
-                            try {
-                                counter++;
-                                acceptorInterface.getAcceptorId();
-                            } catch (RemoteException e) {
+                        for (int counter = 0 ; counter < numServers ; counter++) {
+                            boolean restarted = false;
+                            for (int groupId = 0 ; groupId < groupParticipants.size() ; groupId++) {
                                 try {
-                                    restartServer(counter, fullConf, participantsList, acceptorInterfaces, learnerInterfaces, stopServer);
+                                    groupAcceptors.get(groupId).get(counter).getAcceptorId();
+                                } catch (RemoteException e) {
+                                    try {
+                                        restartServer(counter, groupId, fullConf, groupParticipants.get(groupId), groupAcceptors.get(groupId), groupLearners.get(groupId), stopServer);
+                                        restarted = true;
+                                    } catch (Exception ex) {
+                                        // Failed to restart server
+                                    }
+                                }
+                            }
+                            if (restarted && groupParticipants.size() > 1) {
+                                try {
+                                    bindRouter(counter, fullConf, groupParticipants, routers);
                                 } catch (Exception ex) {
-                                    // Failed to restart server
+                                    // Clients reach group 0 until the next restart check
                                 }
                             }
                         }
@@ -209,13 +313,15 @@ public class PaxosServerRun {
         }
         executors.shutdownNow();
         while (!executors.isTerminated()) {}
-        // Stop all Paxos servers
-        for (PaxosServer server: participantsList) {
-            try {
-                // allowing 1000 milliseconds to each server to gracefully shutdown
-                server.stopServerAsync(true, 1000);
-            } catch (Exception e) {
-                e.printStackTrace();
+        // Stop all Paxos servers of every group
+        for (int groupId = groupParticipants.size() - 1 ; groupId >= 0 ; groupId--) {
+            for (PaxosServer server: groupParticipants.get(groupId)) {
+                try {
+                    // allowing 1000 milliseconds to each server to gracefully shutdown
+                    server.stopServerAsync(true, 1000);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
             }
         }
     }
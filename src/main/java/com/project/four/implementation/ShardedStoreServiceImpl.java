@@ -0,0 +1,137 @@
+package com.project.four.implementation;
+
+import com.project.four.interfaces.StoreService;
+import com.project.four.server.HashRing;
+import com.project.four.server.PaxosServer;
+import com.project.four.utills.RedirectException;
+
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+
+/**
+ * Client entry point of a node hosting several Paxos groups. Key operations are routed to the local
+ * replica of the group that owns the key on the consistent-hash ring, operations on the whole node
+ * are forwarded to every group.
+ * The ring of the node is only a hint: a group that does not own the key answers with a redirect,
+ * which is followed while a range moves between groups.
+ */
+public class ShardedStoreServiceImpl extends UnicastRemoteObject implements StoreService {
+
+    /**
+     * A single call made against the local replica of a group.
+     *
+     * @param <T> Type of the reply.
+     */
+    private interface GroupCall<T> {
+        T call(PaxosServer group) throws RemoteException;
+    }
+
+    private final List<PaxosServer> groups;
+    private final HashRing ring;
+
+    /**
+     * Constructor for ShardedStoreServiceImpl.
+     *
+     * @param groups Local replicas of the groups, indexed by group id.
+     * @param ring   Routing hint assigning keys to groups.
+     * @throws RemoteException If there's an issue with remote object creation.
+     */
+    public ShardedStoreServiceImpl(List<PaxosServer> groups, HashRing ring) throws RemoteException {
+        super();
+        this.groups = groups;
+        this.ring = ring;
+    }
+
+    /**
+     * Calls the local replica of the group owning the key and follows redirects. While a range is
+     * handed over both groups redirect for a moment, so repeated redirects wait before retrying.
+     *
+     * @param key  Key of the operation.
+     * @param call Call to make.
+     * @param <T>  Type of the reply.
+     * @return Reply of the owning group.
+     * @throws RemoteException if the call failed, or the last redirect if the owner was not found in time.
+     */
+    private <T> T route(String key, GroupCall<T> call) throws RemoteException {
+        int groupId = this.ring.groupFor(key == null ? "" : key);
+        int attempts = this.groups.get(0).getsConfig().getRequestAttempts();
+        long delay = Math.max(1, this.groups.get(0).getsConfig().getDelay());
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.call(this.groups.get(groupId));
+            } catch (RemoteException e) {
+                RedirectException redirect = RedirectException.find(e);
+                if (redirect == null || redirect.getGroupId() < 0 || attempt >= attempts) {
+                    throw e;
+                }
+                if (attempt > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+                groupId = redirect.getGroupId();
+            }
+        }
+    }
+
+    @Override
+    public void putData(String key, Object value, String authId) throws RemoteException {
+        this.route(key, group -> {
+            group.putData(key, value, authId);
+            return null;
+        });
+    }
+
+    @Override
+    public Object getData(String key, String authId) throws RemoteException {
+        return this.route(key, group -> group.getData(key, authId));
+    }
+
+    @Override
+    public Object getData(String key, String authId, long maxStaleness) throws RemoteException {
+        return this.route(key, group -> group.getData(key, authId, maxStaleness));
+    }
+
+    @Override
+    public void deleteData(String key, String authId) throws RemoteException {
+        this.route(key, group -> {
+            group.deleteData(key, authId);
+            return null;
+        });
+    }
+
+    @Override
+    public void moveRange(long fromPosition, long toPosition, int groupId, String authId) throws RemoteException {
+        // Every local group shares the node's migrator
+        this.groups.get(0).moveRange(fromPosition, toPosition, groupId, authId);
+    }
+
+    @Override
+    public long splitRange(long position, int groupId, String authId) throws RemoteException {
+        return this.groups.get(0).splitRange(position, groupId, authId);
+    }
+
+    @Override
+    public void stopServer(String authId, boolean force) throws RemoteException {
+        // Every group shares the semaphore stopping the cluster
+        this.groups.get(0).stopServer(authId, force);
+    }
+
+    @Override
+    public void initiateGlobalState(String name) throws RemoteException {
+        for (PaxosServer group : this.groups) {
+            group.initiateGlobalState(name);
+        }
+    }
+
+    @Override
+    public void askToStopASpecificServer(int index) throws RemoteException {
+        for (PaxosServer group : this.groups) {
+            group.askToStopASpecificServer(index);
+        }
+    }
+}
@@ -199,6 +199,31 @@ public class StoreServiceImpl extends UnicastRemoteObject implements StoreServic
         return null;
     }
 
+    /**
+     * Retrieve data from the store using the specified key. A single store is never stale,
+     * so the staleness bound is always met.
+     *
+     * @param key          The key to retrieve data for.
+     * @param authId       The authorization identifier.
+     * @param maxStaleness Maximum age of the returned value in milliseconds.
+     * @return The data associated with the key or null if not found.
+     * @throws RemoteException If there's an issue with the remote operation.
+     */
+    @Override
+    public Object getData(String key, String authId, long maxStaleness) throws RemoteException {
+        return this.getData(key, authId);
+    }
+
+    @Override
+    public void moveRange(long fromPosition, long toPosition, int groupId, String authId) throws RemoteException {
+        throw new RemoteBusinessException("Range migration is not supported by this server");
+    }
+
+    @Override
+    public long splitRange(long position, int groupId, String authId) throws RemoteException {
+        throw new RemoteBusinessException("Range migration is not supported by this server");
+    }
+
     /**
      * Delete data from the store using the specified key, subject to authorization checks.
      *
@@ -1,8 +1,12 @@
 package com.project.four.interfaces;
 
+import com.project.four.server.EgalitarianInstance;
+import com.project.four.utills.Operation;
+
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The AcceptorInterface defines the remote methods to be implemented by the acceptors in the Paxos
@@ -21,6 +25,17 @@ public interface AcceptorInterface extends Remote {
   List<Object> prepareWrapper (long proposalId, Object proposalValue) throws RemoteException;
 //  List<Object> prepare(long proposalId, Object proposalValue) throws RemoteException;
 
+  /**
+   * Prepares the acceptor for every log slot starting from the given slot with a single promise.
+   * Used by a Multi-Paxos leader so that later slots only need the accept phase.
+   *
+   * @param proposalId The ballot of the leader.
+   * @param fromSlot   The first slot covered by the promise.
+   * @return Operations already accepted by this acceptor from the given slot onwards.
+   * @throws RemoteException If a remote communication error occurs or the ballot is not high enough.
+   */
+  List<Operation> prepareRange (long proposalId, long fromSlot) throws RemoteException;
+
   /**
    * Accepts or rejects a proposal with the given proposal ID and value.
    *
@@ -32,6 +47,66 @@ public interface AcceptorInterface extends Remote {
   List<Object> acceptWrapper (long proposalId, Object proposalValue) throws RemoteException;
 //  List<Object> accept(long proposalId, Object proposalValue) throws RemoteException;
 
+  /**
+   * Leader heartbeat that grants or extends the leader lease on this acceptor.
+   *
+   * @param leaderId    The server id of the leader.
+   * @param commitIndex The highest log slot the leader knows to be chosen.
+   * @throws RemoteException If a remote communication error occurs or the lease is not granted.
+   */
+  void heartbeat (int leaderId, long commitIndex) throws RemoteException;
+
+  /**
+   * Heartbeat of the failure detector, sent periodically by every other node.
+   *
+   * @param senderId The server id of the sending node.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  void ping (int senderId) throws RemoteException;
+
+  /**
+   * Leaderless phase 1: adds the conflicting commands known to this acceptor to the instance's dependencies.
+   *
+   * @param proposal The instance with the command and the attributes of the proposer.
+   * @return The instance with the attributes of this acceptor.
+   * @throws RemoteException If a remote communication error occurs or the ballot is not high enough.
+   */
+  EgalitarianInstance preAccept (EgalitarianInstance proposal) throws RemoteException;
+
+  /**
+   * Leaderless phase 2: accepts the final attributes of an instance.
+   *
+   * @param proposal The instance with the command and the attributes to accept.
+   * @throws RemoteException If a remote communication error occurs or the ballot is not high enough.
+   */
+  void acceptInstance (EgalitarianInstance proposal) throws RemoteException;
+
+  /**
+   * Informs the acceptor that an instance is committed with the given attributes.
+   *
+   * @param committed The committed instance.
+   * @throws RemoteException If a remote communication error occurs.
+   */
+  void commitInstance (EgalitarianInstance committed) throws RemoteException;
+
+  /**
+   * Prepares an instance for recovery by another replica.
+   *
+   * @param instanceId The instance to recover.
+   * @param ballot     The ballot of the recovering replica.
+   * @return The instance as known to this acceptor.
+   * @throws RemoteException If a remote communication error occurs or the ballot is not high enough.
+   */
+  EgalitarianInstance prepareInstance (long instanceId, long ballot) throws RemoteException;
+
+  /**
+   * Reports how far this acceptor executed the leaderless instances of every replica.
+   *
+   * @return Per replica, the instance number up to which every instance of that replica was executed.
+   * @throws RemoteException If a remote communication error occurs or leaderless commit is disabled.
+   */
+  Map<Integer, Long> executedInstances () throws RemoteException;
+
   /**
    * Initiates an asynchronous request to stop the server with optional force and sleep parameters.
    *
@@ -1,9 +1,14 @@
 package com.project.four.interfaces;
 
 import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.MerkleNodes;
+import com.project.four.utills.Operation;
+import com.project.four.utills.SnapshotChunk;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The LearnerInterface represents a remote interface that defines
@@ -15,11 +20,73 @@ public interface LearnerInterface extends Remote {
   /**
    * The learn method is used to inform the Learner of an accepted proposal.
    *
+   * @param acceptorId The id of the acceptor that accepted the proposal.
    * @param proposalId The unique identifier for the proposal.
    * @param acceptedValue The value that has been accepted.
    * @throws RemoteException If a remote invocation error occurs.
    */
-  void learn(long proposalId, Object acceptedValue) throws RemoteException;
+  void learn(int acceptorId, long proposalId, Object acceptedValue) throws RemoteException;
+
+  /**
+   * Informs the Learner that a proposal was chosen for a slot. The value can be left out when the
+   * learner is expected to have accepted it already.
+   *
+   * @param slot The slot of the chosen proposal.
+   * @param proposalId The unique identifier for the chosen proposal.
+   * @param chosenValue The chosen value, or null to use the value this node accepted for the proposal.
+   * @return false if the value was left out and this node did not accept the proposal, true otherwise.
+   * @throws RemoteException If a remote invocation error occurs.
+   */
+  boolean chosen(long slot, long proposalId, Object chosenValue) throws RemoteException;
+
+  /**
+   * Informs the Learner that the owner of rotating slots skipped its slots in the given range.
+   *
+   * @param ownerId The server id of the node owning the skipped slots.
+   * @param fromSlot The first skipped slot.
+   * @param toSlot The slot after the range, every slot of the owner below it was skipped.
+   * @throws RemoteException If a remote invocation error occurs or rotating slots are disabled.
+   */
+  void skipped(int ownerId, long fromSlot, long toSlot) throws RemoteException;
+
+  /**
+   * Reads a chunk of the Learner's latest snapshot for a node that is catching up.
+   *
+   * @param index The index of the snapshot being transferred, or -1 for the latest one.
+   * @param offset The position of the chunk in the serialized snapshot.
+   * @param length The maximum number of bytes, 0 only describes the snapshot.
+   * @return The chunk, or null if the Learner has no snapshot or the requested one was replaced.
+   * @throws RemoteException If a remote invocation error occurs or the snapshot can not be read.
+   */
+  SnapshotChunk snapshotChunk(long index, long offset, int length) throws RemoteException;
+
+  /**
+   * Returns values the Learner knows to be chosen, for a node that is catching up.
+   *
+   * @param fromSlot The first slot to return.
+   * @param maxEntries The maximum number of values returned.
+   * @return Chosen operations in slot order, stopping at the first slot the Learner does not know.
+   * @throws RemoteException If a remote invocation error occurs.
+   */
+  List<Operation> fetchChosen(long fromSlot, int maxEntries) throws RemoteException;
+
+  /**
+   * Reads hashes of the Learner's Merkle tree over its store for anti-entropy.
+   *
+   * @param nodeIds The numbers of the tree nodes, the root is 1.
+   * @return The hashes with the Learner's applied index, or null if the Learner keeps no tree.
+   * @throws RemoteException If a remote invocation error occurs.
+   */
+  MerkleNodes merkleNodes(int[] nodeIds) throws RemoteException;
+
+  /**
+   * Reads the entries of the Learner's store that fall into a bucket of its Merkle tree.
+   *
+   * @param bucket The bucket of the tree.
+   * @return The entries of the bucket.
+   * @throws RemoteException If a remote invocation error occurs.
+   */
+  Map<String, Object> merkleBucket(int bucket) throws RemoteException;
 
   /**
    * Logs the global state of the learner.
@@ -47,5 +114,24 @@ public interface LearnerInterface extends Remote {
    * @throws RemoteException If a remote communication error occurs.
    */
   void leaderUpdate (MethodType type, String key, Object value) throws RemoteException;
+
+  /**
+   * Reads a value on the leader, which answers it linearizably under its lease.
+   *
+   * @param key    The key to read.
+   * @param authId The authorization id of the client.
+   * @return The value stored under the key.
+   * @throws RemoteException If a remote communication error occurs or this node is not the leader.
+   */
+  Object leaderRead (String key, String authId) throws RemoteException;
+
+  /**
+   * Returns the leader's commit index after confirming it is still the leader. A follower that has
+   * applied its log up to this index can answer a read locally and still be linearizable.
+   *
+   * @return The highest log slot the leader knows to be chosen.
+   * @throws RemoteException If a remote communication error occurs or this node is not the leader.
+   */
+  long readIndex () throws RemoteException;
   void addNewLearner (LearnerInterface learnerInterface) throws RemoteException;
 }
@@ -30,6 +30,45 @@ public interface StoreService extends Remote {
      */
     Object getData(String key, String authId) throws RemoteException;
 
+    /**
+     * Retrieves data from the key-value store, accepting a value that is at most the given
+     * number of milliseconds old. Replicas that can not guarantee the bound serve a fresh value instead.
+     *
+     * @param key          The key for which data is requested.
+     * @param authId       The authorization ID associated with the operation.
+     * @param maxStaleness Maximum age of the returned value in milliseconds.
+     * @return The data associated with the specified key, or null if the key is not found.
+     * @throws RemoteException if there is a problem with the remote communication.
+     */
+    Object getData(String key, String authId, long maxStaleness) throws RemoteException;
+
+    /**
+     * Moves the range (fromPosition, toPosition] of the consistent-hash ring to another Paxos group
+     * while both groups keep serving requests. Has to be called on the node leading the group that
+     * owns the range.
+     *
+     * @param fromPosition The position before the range.
+     * @param toPosition   The last position of the range, higher than fromPosition.
+     * @param groupId      The group taking over the range.
+     * @param authId       The authorization ID associated with the operation.
+     * @throws RemoteException if there is a problem with the remote communication, or a redirect
+     *                         to the node leading the owning group.
+     */
+    void moveRange(long fromPosition, long toPosition, int groupId, String authId) throws RemoteException;
+
+    /**
+     * Splits the range of the consistent-hash ring containing a position at that position and moves
+     * the part above it to another Paxos group, like {@link #moveRange}.
+     *
+     * @param position The position to split at.
+     * @param groupId  The group taking over the upper part.
+     * @param authId   The authorization ID associated with the operation.
+     * @return The last position of the moved part.
+     * @throws RemoteException if there is a problem with the remote communication, or a redirect
+     *                         to the node leading the owning group.
+     */
+    long splitRange(long position, int groupId, String authId) throws RemoteException;
+
     /**
      * Deletes data from the key-value store.
      *
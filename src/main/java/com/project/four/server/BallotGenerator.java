@@ -0,0 +1,69 @@
+package com.project.four.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BallotGenerator hands out Paxos ballots as a round counter and the node id packed into one long.
+ * The round occupies the upper bits and the node id the lower {@value #NODE_BITS} bits, so ballots
+ * of different nodes never collide and compare by round first. Generated ballots strictly increase
+ * and {@link #observe(long)} moves the generator past any ballot seen in a rejection.
+ */
+public class BallotGenerator {
+    public static final int NODE_BITS = 16;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+
+    private final long nodeId;
+    // Highest round used or observed so far
+    private final AtomicLong round = new AtomicLong(0);
+
+    /**
+     * @param nodeId Id of the node generating ballots, has to fit into {@value #NODE_BITS} bits.
+     */
+    public BallotGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > NODE_MASK) {
+            throw new IllegalArgumentException("Node id " + nodeId + " does not fit into a ballot");
+        }
+        this.nodeId = nodeId;
+    }
+
+    /**
+     * Packs a round and a node id into a ballot.
+     *
+     * @param round  Round counter.
+     * @param nodeId Node id.
+     * @return Packed ballot.
+     */
+    public static long pack(long round, int nodeId) {
+        return (round << NODE_BITS) | (nodeId & NODE_MASK);
+    }
+
+    public static long round(long ballot) {
+        return ballot >>> NODE_BITS;
+    }
+
+    public static int nodeId(long ballot) {
+        return (int) (ballot & NODE_MASK);
+    }
+
+    /**
+     * Returns a new ballot higher than every ballot generated or observed before.
+     *
+     * @return New ballot.
+     */
+    public long next() {
+        return pack(this.round.incrementAndGet(), (int) this.nodeId);
+    }
+
+    /**
+     * Records a ballot seen from another proposer so the next generated ballot is higher.
+     *
+     * @param ballot Observed ballot.
+     */
+    public void observe(long ballot) {
+        if (ballot < 0) {
+            return;
+        }
+        long observedRound = round(ballot);
+        this.round.accumulateAndGet(observedRound, Math::max);
+    }
+}
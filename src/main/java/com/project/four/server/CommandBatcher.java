@@ -0,0 +1,237 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import com.project.four.utills.RemoteBusinessException;
+import com.project.four.utills.Utills;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CommandBatcher collects concurrent client commands on the proposer and proposes them together
+ * as a single BATCH operation, so one consensus round commits many commands.
+ * A batch is flushed once the pending commands reach the current target size or once the oldest
+ * command waited for the configured delay, and takes every pending command up to the maximum size.
+ * Commands arriving while a batch is committed are collected for the next one. The target size
+ * adapts to the observed commit latency: it grows while batches commit within the delay and is
+ * halved when they take longer. Up to maxInFlight batches are committed at the same time.
+ * When the flush loop stops, every command still waiting fails, and so do later submissions.
+ */
+public class CommandBatcher implements Runnable {
+    /**
+     * Proposes a batch operation through consensus.
+     */
+    public interface BatchProposer {
+        void proposeBatch(Operation batch) throws RemoteException;
+    }
+
+    private final BatchProposer proposer;
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final long commitTimeout;
+    private int targetBatchSize = 1;
+    private final List<Operation> pending = new ArrayList<Operation>();
+    private final List<CompletableFuture<Void>> waiting = new ArrayList<CompletableFuture<Void>>();
+    private long oldestPending = 0;
+    private boolean stopped = false;
+    private final ExecutorService flushExecutor;
+    private final Semaphore inFlight;
+
+    /**
+     * @param proposer     Proposer used to commit flushed batches.
+     * @param maxBatchSize Upper bound of commands in a single batch.
+     * @param maxDelay     Milliseconds a command may wait before its batch is flushed.
+     * @param flushExecutor Executor committing flushed batches.
+     * @param maxInFlight  Number of batches that may be committed concurrently.
+     * @param commitTimeout Milliseconds a caller waits for its batch to commit, 0 waits without limit.
+     */
+    public CommandBatcher(BatchProposer proposer, int maxBatchSize, long maxDelay, ExecutorService flushExecutor, int maxInFlight, long commitTimeout) {
+        this.proposer = proposer;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelay = Math.max(1, maxDelay);
+        this.commitTimeout = commitTimeout;
+        this.flushExecutor = flushExecutor;
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+    }
+
+    /**
+     * Adds a command to the next batch and waits until that batch is committed.
+     *
+     * @param operation Command to commit.
+     * @throws RemoteException if the batch containing the command could not be committed in time.
+     */
+    public void submit(Operation operation) throws RemoteException {
+        CompletableFuture<Void> done = new CompletableFuture<Void>();
+        synchronized (this) {
+            if (this.stopped) {
+                throw new RemoteBusinessException("Batching stopped");
+            }
+            if (this.pending.isEmpty()) {
+                this.oldestPending = System.currentTimeMillis();
+            }
+            this.pending.add(operation);
+            this.waiting.add(done);
+            this.notifyAll();
+        }
+        try {
+            if (this.commitTimeout > 0) {
+                done.get(this.commitTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            this.withdraw(done);
+            Thread.currentThread().interrupt();
+            throw new RemoteBusinessException("Interrupted while waiting for batch commit");
+        } catch (TimeoutException e) {
+            this.withdraw(done);
+            throw new RemoteBusinessException("Batch was not committed in time");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw new RemoteBusinessException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Takes a command back from the pending commands if it was not flushed yet, so that a caller
+     * that gave up waiting does not see it committed later.
+     *
+     * @param done Future of the caller.
+     */
+    private synchronized void withdraw(CompletableFuture<Void> done) {
+        int index = this.waiting.indexOf(done);
+        if (index >= 0) {
+            this.pending.remove(index);
+            this.waiting.remove(index);
+        }
+    }
+
+    /**
+     * Flush loop, runs until the thread is interrupted. The commands left pending fail on exit.
+     */
+    @Override
+    public void run() {
+        try {
+            this.flushLoop();
+        } finally {
+            List<CompletableFuture<Void>> left;
+            synchronized (this) {
+                this.stopped = true;
+                left = new ArrayList<CompletableFuture<Void>>(this.waiting);
+                this.pending.clear();
+                this.waiting.clear();
+            }
+            RemoteBusinessException stopped = new RemoteBusinessException("Batching stopped");
+            for (CompletableFuture<Void> done : left) {
+                done.completeExceptionally(stopped);
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (!Utills.checkInterrupt()) {
+            List<Operation> batch;
+            List<CompletableFuture<Void>> batchWaiting;
+            try {
+                // Commands keep collecting while the pipeline is full
+                this.inFlight.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                try {
+                    while (!this.readyToFlush()) {
+                        if (this.pending.isEmpty()) {
+                            this.wait();
+                        } else {
+                            this.wait(Math.max(1, this.oldestPending + this.maxDelay - System.currentTimeMillis()));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    this.inFlight.release();
+                    return;
+                }
+                int size = Math.min(this.pending.size(), this.maxBatchSize);
+                batch = new ArrayList<Operation>(this.pending.subList(0, size));
+                batchWaiting = new ArrayList<CompletableFuture<Void>>(this.waiting.subList(0, size));
+                this.pending.subList(0, size).clear();
+                this.waiting.subList(0, size).clear();
+                this.oldestPending = System.currentTimeMillis();
+            }
+            try {
+                this.flushExecutor.submit(() -> {
+                    try {
+                        this.flush(batch, batchWaiting);
+                    } finally {
+                        this.inFlight.release();
+                    }
+                });
+            } catch (Exception e) {
+                this.inFlight.release();
+                for (CompletableFuture<Void> done : batchWaiting) {
+                    done.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the pending commands fill a batch or the oldest one waited long enough.
+     *
+     * @return true if a batch should be flushed now.
+     */
+    private boolean readyToFlush() {
+        if (this.pending.isEmpty()) {
+            return false;
+        }
+        return this.pending.size() >= this.targetBatchSize
+                || System.currentTimeMillis() - this.oldestPending >= this.maxDelay;
+    }
+
+    /**
+     * Proposes a batch, completes the waiting callers and adapts the target size to the commit latency.
+     *
+     * @param batch        Commands of the batch.
+     * @param batchWaiting Futures of the callers waiting for the commands.
+     */
+    private void flush(List<Operation> batch, List<CompletableFuture<Void>> batchWaiting) {
+        long start = System.currentTimeMillis();
+        try {
+            if (batch.size() == 1) {
+                this.proposer.proposeBatch(batch.get(0));
+            } else {
+                this.proposer.proposeBatch(new Operation(MethodType.BATCH, "BATCH-" + UUID.randomUUID(), new ArrayList<Operation>(batch), "internal"));
+            }
+            for (CompletableFuture<Void> done : batchWaiting) {
+                done.complete(null);
+            }
+        } catch (Exception e) {
+            for (CompletableFuture<Void> done : batchWaiting) {
+                done.completeExceptionally(e);
+            }
+        }
+        long latency = System.currentTimeMillis() - start;
+        synchronized (this) {
+            if (latency > this.maxDelay) {
+                this.targetBatchSize = Math.max(1, this.targetBatchSize / 2);
+            } else if (batch.size() >= this.targetBatchSize) {
+                this.targetBatchSize = Math.min(this.maxBatchSize, this.targetBatchSize + 1);
+            }
+        }
+    }
+
+    public synchronized int getTargetBatchSize() {
+        return targetBatchSize;
+    }
+}
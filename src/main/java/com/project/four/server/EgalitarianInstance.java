@@ -0,0 +1,129 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.InstanceStatus;
+import com.project.four.utills.Operation;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * EgalitarianInstance is one command of the leaderless commit path together with its ordering
+ * attributes: the sequence number and the instances of conflicting commands it depends on.
+ * The same class is used as the message exchanged between replicas, so copies are sent instead
+ * of the stored instance.
+ */
+public class EgalitarianInstance implements Serializable {
+    private static final long serialVersionUID = 6318410032274829175L;
+
+    private final long id;
+    private Operation command = null;
+    private long seq = 0;
+    private Set<Long> deps = new HashSet<Long>();
+    private InstanceStatus status = null;
+    private long promisedBallot = -1;
+    private long acceptedBallot = -1;
+    // Ballot of the message, only used when the instance is sent to another replica
+    private long ballot = 0;
+    // Local time the instance was first seen, used to detect instances that block execution
+    private transient long firstSeen = System.nanoTime();
+
+    public EgalitarianInstance(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns a copy that can be handed out or sent without sharing the dependency set.
+     *
+     * @return Copy of the instance.
+     */
+    public EgalitarianInstance copy() {
+        EgalitarianInstance copy = new EgalitarianInstance(this.id);
+        copy.command = this.command;
+        copy.seq = this.seq;
+        copy.deps = new HashSet<Long>(this.deps);
+        copy.status = this.status;
+        copy.promisedBallot = this.promisedBallot;
+        copy.acceptedBallot = this.acceptedBallot;
+        copy.ballot = this.ballot;
+        return copy;
+    }
+
+    /**
+     * Checks whether another instance carries the same ordering attributes.
+     *
+     * @param other Instance to compare with.
+     * @return true if sequence number and dependencies are equal.
+     */
+    public boolean sameAttributes(EgalitarianInstance other) {
+        return this.seq == other.seq && this.deps.equals(other.deps);
+    }
+
+    public boolean isCommitted() {
+        return this.status == InstanceStatus.COMMITTED || this.status == InstanceStatus.EXECUTED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Operation getCommand() {
+        return command;
+    }
+
+    public void setCommand(Operation command) {
+        this.command = command;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Set<Long> getDeps() {
+        return deps;
+    }
+
+    public void setDeps(Set<Long> deps) {
+        this.deps = deps;
+    }
+
+    public InstanceStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(InstanceStatus status) {
+        this.status = status;
+    }
+
+    public long getPromisedBallot() {
+        return promisedBallot;
+    }
+
+    public void setPromisedBallot(long promisedBallot) {
+        this.promisedBallot = promisedBallot;
+    }
+
+    public long getAcceptedBallot() {
+        return acceptedBallot;
+    }
+
+    public void setAcceptedBallot(long acceptedBallot) {
+        this.acceptedBallot = acceptedBallot;
+    }
+
+    public long getBallot() {
+        return ballot;
+    }
+
+    public void setBallot(long ballot) {
+        this.ballot = ballot;
+    }
+
+    public long getFirstSeen() {
+        return firstSeen;
+    }
+}
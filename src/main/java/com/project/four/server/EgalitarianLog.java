@@ -0,0 +1,466 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.InstanceStatus;
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import com.project.four.utills.PaxosRejectException;
+import com.project.four.utills.RemoteBusinessException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * EgalitarianLog keeps the instances of the leaderless commit path, modelled after Egalitarian Paxos.
+ * Every replica owns its own instance space and orders commands without a leader: a command records
+ * the instances of conflicting commands (commands on the same key) as dependencies together with
+ * a sequence number. Commands on different keys never depend on each other, so they commit
+ * independently from any replica.
+ * Committed instances are executed once all their dependencies are committed. Dependency cycles
+ * are executed as a strongly connected component in sequence number order, which gives every
+ * replica the same order for conflicting commands.
+ * Instance ids pack the instance number and the owning replica like ballots do.
+ * Every replica tracks up to which instance number it executed the instances of each replica
+ * without gap. Instances below the lowest of these watermarks over all replicas were executed
+ * everywhere: no replica has to recover them and later commands need not depend on them, so they
+ * are dropped together with their entries in the key index. Dependencies on dropped instances count
+ * as executed.
+ */
+public class EgalitarianLog {
+    /**
+     * Applies an executed command to the replica's state.
+     */
+    public interface CommandApplier {
+        void apply(Operation command);
+    }
+
+    private final int replicaId;
+    private final CommandApplier applier;
+    private long nextInstance = 0;
+    private final Map<Long, EgalitarianInstance> instances = new HashMap<Long, EgalitarianInstance>();
+    // Latest instance of every replica that touched a key
+    private final Map<String, Map<Integer, Long>> keyIndex = new HashMap<String, Map<Integer, Long>>();
+    // Highest sequence number seen for a key
+    private final Map<String, Long> keySeq = new HashMap<String, Long>();
+    // Committed instances that are not executed yet
+    private final Set<Long> pendingExecution = new LinkedHashSet<Long>();
+    // Per replica, the instance number up to which every instance of that replica was executed here
+    private final Map<Integer, Long> executedThrough = new HashMap<Integer, Long>();
+    // Per replica, the highest instance number seen from that replica
+    private final Map<Integer, Long> highestSeen = new HashMap<Integer, Long>();
+    // Per replica, the instance number up to which instances were executed by every replica and dropped
+    private final Map<Integer, Long> truncatedThrough = new HashMap<Integer, Long>();
+
+    /**
+     * @param replicaId Id of the replica owning this log.
+     * @param applier   Applies executed commands.
+     */
+    public EgalitarianLog(int replicaId, CommandApplier applier) {
+        this.replicaId = replicaId;
+        this.applier = applier;
+    }
+
+    /**
+     * Creates a new instance of this replica for the command and pre-accepts it locally.
+     *
+     * @param command Command to order.
+     * @return The instance with the locally computed attributes.
+     * @throws RemoteBusinessException never for a new instance.
+     */
+    public synchronized EgalitarianInstance propose(Operation command) throws RemoteBusinessException {
+        EgalitarianInstance proposal = new EgalitarianInstance(BallotGenerator.pack(this.nextInstance++, this.replicaId));
+        proposal.setCommand(command);
+        proposal.setBallot(0);
+        return this.preAccept(proposal);
+    }
+
+    /**
+     * Phase 1: adds every conflicting instance known to this replica to the dependencies of the
+     * proposal and raises its sequence number above theirs.
+     *
+     * @param proposal Instance with the command and the attributes of the proposer.
+     * @return The instance with this replica's attributes.
+     * @throws PaxosRejectException    if a higher ballot was promised for the instance.
+     * @throws RemoteBusinessException if the instance is already committed.
+     */
+    public synchronized EgalitarianInstance preAccept(EgalitarianInstance proposal) throws RemoteBusinessException {
+        this.checkTruncated(proposal.getId());
+        EgalitarianInstance instance = this.instance(proposal.getId());
+        if (instance.isCommitted()) {
+            throw new RemoteBusinessException("Instance " + proposal.getId() + " already committed");
+        }
+        if (proposal.getBallot() < instance.getPromisedBallot()) {
+            throw new PaxosRejectException("Lower Priority Proposed, Restart Transaction", instance.getPromisedBallot());
+        }
+        long promised = instance.getPromisedBallot();
+        instance.setPromisedBallot(proposal.getBallot());
+        if (instance.getStatus() == InstanceStatus.ACCEPTED) {
+            // Attributes accepted in phase 2 are kept, the proposer merges them
+            return instance.copy();
+        }
+        if (instance.getStatus() == InstanceStatus.PREACCEPTED && proposal.getBallot() == promised) {
+            // Repeated in the same ballot, e.g. on the proposer itself: the indexed attributes already count the instance
+            return instance.copy();
+        }
+        Set<Long> deps = new HashSet<Long>(proposal.getDeps());
+        long seq = proposal.getSeq();
+        for (String key : keysOf(proposal.getCommand())) {
+            Map<Integer, Long> latest = this.keyIndex.get(key);
+            if (latest != null) {
+                for (long dep : latest.values()) {
+                    if (dep != proposal.getId()) {
+                        deps.add(dep);
+                    }
+                }
+            }
+            seq = Math.max(seq, this.keySeq.getOrDefault(key, 0L) + 1);
+        }
+        instance.setCommand(proposal.getCommand());
+        instance.setSeq(seq);
+        instance.setDeps(deps);
+        instance.setStatus(InstanceStatus.PREACCEPTED);
+        this.index(instance);
+        return instance.copy();
+    }
+
+    /**
+     * Phase 2: accepts the final attributes of an instance.
+     *
+     * @param proposal Instance with the command and the attributes to accept.
+     * @throws PaxosRejectException    if a higher ballot was promised for the instance.
+     * @throws RemoteBusinessException if the instance is already committed.
+     */
+    public synchronized void accept(EgalitarianInstance proposal) throws RemoteBusinessException {
+        this.checkTruncated(proposal.getId());
+        EgalitarianInstance instance = this.instance(proposal.getId());
+        if (instance.isCommitted()) {
+            throw new RemoteBusinessException("Instance " + proposal.getId() + " already committed");
+        }
+        if (proposal.getBallot() < instance.getPromisedBallot()) {
+            throw new PaxosRejectException("Proposal ID lower in Accept-Request phase", instance.getPromisedBallot());
+        }
+        instance.setPromisedBallot(proposal.getBallot());
+        instance.setAcceptedBallot(proposal.getBallot());
+        instance.setCommand(proposal.getCommand());
+        instance.setSeq(proposal.getSeq());
+        instance.setDeps(new HashSet<Long>(proposal.getDeps()));
+        instance.setStatus(InstanceStatus.ACCEPTED);
+        this.index(instance);
+    }
+
+    /**
+     * Records the committed attributes of an instance and executes every instance that became executable.
+     *
+     * @param committed Committed instance.
+     */
+    public synchronized void commit(EgalitarianInstance committed) {
+        if (this.isTruncated(committed.getId())) {
+            return;
+        }
+        EgalitarianInstance instance = this.instance(committed.getId());
+        if (!instance.isCommitted()) {
+            instance.setCommand(committed.getCommand());
+            instance.setSeq(committed.getSeq());
+            instance.setDeps(new HashSet<Long>(committed.getDeps()));
+            instance.setStatus(InstanceStatus.COMMITTED);
+            this.index(instance);
+            for (long dep : instance.getDeps()) {
+                // Unknown dependencies are tracked so that they can be recovered if they stay missing
+                if (!this.isTruncated(dep)) {
+                    this.instance(dep);
+                }
+            }
+            this.pendingExecution.add(instance.getId());
+            this.execute();
+        }
+    }
+
+    /**
+     * Explicit prepare used to recover an instance whose proposer did not finish it.
+     *
+     * @param instanceId Instance to recover.
+     * @param ballot     Ballot of the recovering replica.
+     * @return Copy of the instance as known to this replica, without command if it is unknown.
+     * @throws PaxosRejectException    if a higher or equal ballot was already promised.
+     * @throws RemoteBusinessException if the instance was executed by every replica and dropped.
+     */
+    public synchronized EgalitarianInstance prepare(long instanceId, long ballot) throws RemoteBusinessException {
+        this.checkTruncated(instanceId);
+        EgalitarianInstance instance = this.instance(instanceId);
+        if (!instance.isCommitted() && ballot <= instance.getPromisedBallot()) {
+            throw new PaxosRejectException("Lower Priority Proposed, Restart Transaction", instance.getPromisedBallot());
+        }
+        if (!instance.isCommitted()) {
+            instance.setPromisedBallot(ballot);
+        }
+        return instance.copy();
+    }
+
+    /**
+     * Returns the instances that committed instances depend on, but that were not committed within
+     * the given time. These block execution and have to be recovered. Instances of a replica missing
+     * below the highest instance seen from it are returned as well, they hold back the executed
+     * watermark of that replica and with it the truncation of the log.
+     *
+     * @param age Milliseconds an instance may stay uncommitted.
+     * @return Ids of the blocking instances.
+     */
+    public synchronized List<Long> blockingInstances(long age) {
+        long now = System.nanoTime();
+        Set<Long> blocking = new LinkedHashSet<Long>();
+        for (long id : this.pendingExecution) {
+            for (long dep : this.instances.get(id).getDeps()) {
+                EgalitarianInstance instance = this.instances.get(dep);
+                if (instance != null && !instance.isCommitted() && (now - instance.getFirstSeen()) / 1_000_000L >= age) {
+                    blocking.add(dep);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Long> highest : this.highestSeen.entrySet()) {
+            int owner = highest.getKey();
+            for (long number = this.executedThrough.getOrDefault(owner, -1L) + 1; number < highest.getValue(); number++) {
+                // Instances never seen here start aging now
+                EgalitarianInstance instance = this.instance(BallotGenerator.pack(number, owner));
+                if (!instance.isCommitted() && (now - instance.getFirstSeen()) / 1_000_000L >= age) {
+                    blocking.add(instance.getId());
+                }
+            }
+        }
+        return new ArrayList<Long>(blocking);
+    }
+
+    /**
+     * @return Per replica, the instance number up to which this replica executed every instance of it.
+     */
+    public synchronized Map<Integer, Long> getExecutedThrough() {
+        return new HashMap<Integer, Long>(this.executedThrough);
+    }
+
+    /**
+     * Drops the instances every replica executed, together with their entries in the key index.
+     * No replica recovers these instances any more and every replica executes later commands after
+     * them, so later commands do not have to depend on them.
+     *
+     * @param executedEverywhere Per replica, the instance number up to which every replica executed its instances.
+     */
+    public synchronized void truncate(Map<Integer, Long> executedEverywhere) {
+        boolean advanced = false;
+        for (Map.Entry<Integer, Long> entry : executedEverywhere.entrySet()) {
+            int owner = entry.getKey();
+            // Never beyond what was executed here
+            long through = Math.min(entry.getValue(), this.executedThrough.getOrDefault(owner, -1L));
+            long from = this.truncatedThrough.getOrDefault(owner, -1L);
+            if (through <= from) {
+                continue;
+            }
+            for (long number = from + 1; number <= through; number++) {
+                this.instances.remove(BallotGenerator.pack(number, owner));
+            }
+            this.truncatedThrough.put(owner, through);
+            advanced = true;
+        }
+        if (!advanced) {
+            return;
+        }
+        Iterator<Map.Entry<String, Map<Integer, Long>>> keys = this.keyIndex.entrySet().iterator();
+        while (keys.hasNext()) {
+            Map.Entry<String, Map<Integer, Long>> key = keys.next();
+            key.getValue().values().removeIf(this::isTruncated);
+            if (key.getValue().isEmpty()) {
+                // No instance on the key is left that a later command would have to follow
+                keys.remove();
+                this.keySeq.remove(key.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return Number of instances held in memory.
+     */
+    public synchronized int size() {
+        return this.instances.size();
+    }
+
+    /**
+     * Waits until the given instance has been executed.
+     *
+     * @param instanceId Instance to wait for.
+     * @param timeout    Maximum milliseconds to wait, 0 waits without limit.
+     * @return true if the instance was executed in time.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public synchronized boolean awaitExecuted(long instanceId, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!this.isTruncated(instanceId) && this.instance(instanceId).getStatus() != InstanceStatus.EXECUTED) {
+            if (timeout <= 0) {
+                this.wait();
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    private EgalitarianInstance instance(long instanceId) {
+        this.highestSeen.merge(BallotGenerator.nodeId(instanceId), BallotGenerator.round(instanceId), Math::max);
+        return this.instances.computeIfAbsent(instanceId, EgalitarianInstance::new);
+    }
+
+    /**
+     * @param instanceId Instance id.
+     * @return true if every replica executed the instance and it was dropped.
+     */
+    private boolean isTruncated(long instanceId) {
+        return BallotGenerator.round(instanceId) <= this.truncatedThrough.getOrDefault(BallotGenerator.nodeId(instanceId), -1L);
+    }
+
+    private void checkTruncated(long instanceId) throws RemoteBusinessException {
+        if (this.isTruncated(instanceId)) {
+            throw new RemoteBusinessException("Instance " + instanceId + " was executed by every replica and dropped");
+        }
+    }
+
+    /**
+     * Makes the instance visible to later conflicting commands.
+     *
+     * @param instance Instance with command and attributes.
+     */
+    private void index(EgalitarianInstance instance) {
+        for (String key : keysOf(instance.getCommand())) {
+            this.keyIndex.computeIfAbsent(key, k -> new HashMap<Integer, Long>())
+                    .merge(BallotGenerator.nodeId(instance.getId()), instance.getId(), Math::max);
+            this.keySeq.merge(key, instance.getSeq(), Math::max);
+        }
+    }
+
+    /**
+     * Keys a command conflicts on. Commands without keys never conflict.
+     *
+     * @param command Command to inspect.
+     * @return Keys touched by the command.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<String> keysOf(Operation command) {
+        if (command == null || command.getType() == MethodType.NOOP) {
+            return Collections.emptyList();
+        }
+        if (command.getType() == MethodType.BATCH) {
+            List<String> keys = new ArrayList<String>();
+            for (Operation member : (List<Operation>) command.getValue()) {
+                keys.add(member.getKey());
+            }
+            return keys;
+        }
+        return Collections.singletonList(command.getKey());
+    }
+
+    /**
+     * Advances the executed watermark of a replica over the instances executed without gap.
+     *
+     * @param owner   Replica owning the instances.
+     * @param through Current watermark.
+     * @return New watermark.
+     */
+    private long executedFrom(int owner, long through) {
+        EgalitarianInstance next;
+        while ((next = this.instances.get(BallotGenerator.pack(through + 1, owner))) != null && next.getStatus() == InstanceStatus.EXECUTED) {
+            through++;
+        }
+        return through;
+    }
+
+    /**
+     * State of one run of Tarjan's strongly connected components algorithm.
+     */
+    private static class Traversal {
+        private final Map<Long, Integer> index = new HashMap<Long, Integer>();
+        private final Map<Long, Integer> lowLink = new HashMap<Long, Integer>();
+        private final Deque<EgalitarianInstance> stack = new ArrayDeque<EgalitarianInstance>();
+        private final Set<Long> onStack = new HashSet<Long>();
+        private int counter = 0;
+    }
+
+    /**
+     * Executes every committed instance whose dependencies are committed.
+     */
+    private void execute() {
+        for (long id : new ArrayList<Long>(this.pendingExecution)) {
+            EgalitarianInstance instance = this.instances.get(id);
+            if (instance.getStatus() == InstanceStatus.COMMITTED) {
+                // A traversal that hits an uncommitted dependency leaves its instances for later
+                this.strongConnect(instance, new Traversal());
+            }
+        }
+        for (Map.Entry<Integer, Long> entry : this.executedThrough.entrySet()) {
+            entry.setValue(this.executedFrom(entry.getKey(), entry.getValue()));
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Tarjan's algorithm over the dependency graph of committed, not yet executed instances.
+     * Components are found dependencies first and executed as soon as they are complete.
+     *
+     * @param instance  Instance to visit.
+     * @param traversal State of the traversal.
+     * @return false if an uncommitted dependency was reached.
+     */
+    private boolean strongConnect(EgalitarianInstance instance, Traversal traversal) {
+        long id = instance.getId();
+        traversal.index.put(id, traversal.counter);
+        traversal.lowLink.put(id, traversal.counter);
+        traversal.counter++;
+        traversal.stack.push(instance);
+        traversal.onStack.add(id);
+        for (long depId : instance.getDeps()) {
+            if (this.isTruncated(depId)) {
+                continue;
+            }
+            EgalitarianInstance dep = this.instances.get(depId);
+            if (dep == null || !dep.isCommitted()) {
+                return false;
+            }
+            if (dep.getStatus() == InstanceStatus.EXECUTED) {
+                continue;
+            }
+            if (!traversal.index.containsKey(depId)) {
+                if (!this.strongConnect(dep, traversal)) {
+                    return false;
+                }
+                traversal.lowLink.put(id, Math.min(traversal.lowLink.get(id), traversal.lowLink.get(depId)));
+            } else if (traversal.onStack.contains(depId)) {
+                traversal.lowLink.put(id, Math.min(traversal.lowLink.get(id), traversal.index.get(depId)));
+            }
+        }
+        if (traversal.lowLink.get(id).equals(traversal.index.get(id))) {
+            List<EgalitarianInstance> component = new ArrayList<EgalitarianInstance>();
+            EgalitarianInstance member;
+            do {
+                member = traversal.stack.pop();
+                traversal.onStack.remove(member.getId());
+                component.add(member);
+            } while (member.getId() != id);
+            component.sort(Comparator.comparingLong(EgalitarianInstance::getSeq).thenComparingLong(EgalitarianInstance::getId));
+            for (EgalitarianInstance next : component) {
+                this.applier.apply(next.getCommand());
+                next.setStatus(InstanceStatus.EXECUTED);
+                this.pendingExecution.remove(next.getId());
+                this.executedThrough.putIfAbsent(BallotGenerator.nodeId(next.getId()), -1L);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+package com.project.four.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FailureDetector is a phi-accrual failure detector over heartbeats pushed by the other nodes.
+ * For every node it keeps the recent intervals between heartbeats and turns the time since the
+ * last one into a suspicion level phi: a node is suspected with phi 8 when a heartbeat this late
+ * would occur once in 10^8 times. Nodes whose heartbeats become irregular are given more time
+ * before they are suspected, instead of a fixed timeout.
+ * Suspect and alive events are reported to the listener once per change, outside the detector's lock.
+ */
+public class FailureDetector {
+    // Heartbeat intervals kept per node
+    private static final int WINDOW = 100;
+
+    /**
+     * Receives the changes of the detector's view of a node.
+     */
+    public interface Listener {
+        /**
+         * @param nodeId Node whose heartbeats stopped.
+         * @param phi    Suspicion level when the node was suspected.
+         */
+        void suspected(int nodeId, double phi);
+
+        /**
+         * @param nodeId Suspected node that sent a heartbeat again.
+         */
+        void alive(int nodeId);
+    }
+
+    /**
+     * Heartbeat history of a node.
+     */
+    private static class History {
+        final long[] intervals = new long[WINDOW];
+        int count = 0;
+        int next = 0;
+        double sum = 0;
+        double squares = 0;
+        long last;
+        boolean suspected = false;
+
+        History(long now, long interval) {
+            this.last = now;
+            // Without heartbeats yet the node is expected at the configured interval
+            this.add(interval);
+        }
+
+        void add(long interval) {
+            if (this.count == WINDOW) {
+                long dropped = this.intervals[this.next];
+                this.sum -= dropped;
+                this.squares -= (double) dropped * dropped;
+            } else {
+                this.count++;
+            }
+            this.intervals[this.next] = interval;
+            this.next = (this.next + 1) % WINDOW;
+            this.sum += interval;
+            this.squares += (double) interval * interval;
+        }
+    }
+
+    private final long interval;
+    private final double threshold;
+    private final Listener listener;
+    private final Map<Integer, History> histories = new HashMap<Integer, History>();
+
+    /**
+     * @param interval  Milliseconds between two heartbeats of a node.
+     * @param threshold Suspicion level at which a node is suspected.
+     * @param listener  Receives suspect and alive events.
+     */
+    public FailureDetector(long interval, double threshold, Listener listener) {
+        this.interval = interval;
+        this.threshold = threshold;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts watching a node, it is suspected if it sends no heartbeat from now on.
+     *
+     * @param nodeId Node to watch, nodes already watched are left alone.
+     */
+    public synchronized void watch(int nodeId) {
+        this.histories.putIfAbsent(nodeId, new History(System.currentTimeMillis(), this.interval));
+    }
+
+    /**
+     * Records a heartbeat of a node, reporting it alive if it was suspected.
+     *
+     * @param nodeId Node that sent the heartbeat.
+     */
+    public void heartbeat(int nodeId) {
+        long now = System.currentTimeMillis();
+        boolean revived;
+        synchronized (this) {
+            History history = this.histories.get(nodeId);
+            if (history == null) {
+                this.histories.put(nodeId, new History(now, this.interval));
+                return;
+            }
+            revived = history.suspected;
+            if (revived) {
+                // The outage is no heartbeat interval, the node starts over at the configured interval
+                this.histories.put(nodeId, new History(now, this.interval));
+            } else {
+                history.add(now - history.last);
+                history.last = now;
+            }
+        }
+        if (revived) {
+            this.listener.alive(nodeId);
+        }
+    }
+
+    /**
+     * Suspects every watched node whose suspicion level reached the threshold since the last check.
+     */
+    public void check() {
+        long now = System.currentTimeMillis();
+        Map<Integer, Double> suspects = new HashMap<Integer, Double>();
+        synchronized (this) {
+            for (Map.Entry<Integer, History> entry : this.histories.entrySet()) {
+                History history = entry.getValue();
+                if (history.suspected) {
+                    continue;
+                }
+                double phi = this.phi(history, now);
+                if (phi >= this.threshold) {
+                    history.suspected = true;
+                    suspects.put(entry.getKey(), phi);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Double> suspect : suspects.entrySet()) {
+            this.listener.suspected(suspect.getKey(), suspect.getValue());
+        }
+    }
+
+    /**
+     * @param nodeId Node to check.
+     * @return true if the node is watched and suspected.
+     */
+    public synchronized boolean isSuspected(int nodeId) {
+        History history = this.histories.get(nodeId);
+        return history != null && history.suspected;
+    }
+
+    /**
+     * Computes the suspicion level of a node from the normal distribution of its heartbeat
+     * intervals, using the logistic approximation of its cumulative distribution function.
+     * One interval is added to the mean as acceptable pause, and the standard deviation is at
+     * least a quarter interval, so perfectly regular heartbeats do not make the detector hair-trigger.
+     */
+    private double phi(History history, long now) {
+        double mean = history.sum / history.count + this.interval;
+        double variance = history.squares / history.count - (history.sum / history.count) * (history.sum / history.count);
+        double deviation = Math.max(Math.sqrt(Math.max(variance, 0)), this.interval / 4.0);
+        double y = (now - history.last - mean) / deviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (now - history.last > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+}
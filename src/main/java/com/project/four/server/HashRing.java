@@ -0,0 +1,147 @@
+package com.project.four.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * HashRing is a consistent-hash ring that assigns keys to Paxos groups.
+ * Every group owns a number of virtual tokens on the ring and a key belongs to the group of the first
+ * token at or after the key's hash. Token positions only depend on the group ids, so every node
+ * builds the same ring and routes a key to the same group.
+ * A range of positions can be assigned to another group, which adds tokens at the range bounds
+ * where needed. Applying the same assignments in the same order gives the same ring everywhere.
+ */
+public class HashRing {
+    // Tokens per group, more tokens spread the keys more evenly
+    private static final int VIRTUAL_NODES = 64;
+
+    private final TreeMap<Long, Integer> tokens = new TreeMap<Long, Integer>();
+
+    /**
+     * @param groups Number of groups sharing the ring.
+     */
+    public HashRing(int groups) {
+        for (int groupId = 0; groupId < Math.max(1, groups); groupId++) {
+            for (int token = 0; token < VIRTUAL_NODES; token++) {
+                this.tokens.put(hash("group-" + groupId + "-" + token), groupId);
+            }
+        }
+    }
+
+    /**
+     * Finds the group owning a key.
+     *
+     * @param key Key to route.
+     * @return Id of the group owning the key.
+     */
+    public int groupFor(String key) {
+        return this.ownerOf(hash(key));
+    }
+
+    /**
+     * Finds the group owning a position on the ring.
+     *
+     * @param position Position on the ring.
+     * @return Id of the group owning the position.
+     */
+    public synchronized int ownerOf(long position) {
+        Map.Entry<Long, Integer> token = this.tokens.ceilingEntry(position);
+        return (token == null ? this.tokens.firstEntry() : token).getValue();
+    }
+
+    /**
+     * Finds the group owning every position of a range.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @return Id of the owning group, or -1 if the range is owned by several groups.
+     */
+    public synchronized int ownerOfRange(long fromPosition, long toPosition) {
+        int owner = this.ownerOf(toPosition);
+        for (int groupId : this.tokens.subMap(fromPosition, false, toPosition, false).values()) {
+            if (groupId != owner) {
+                return -1;
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Finds the last position of the range a position belongs to, which is the next token.
+     *
+     * @param position Position on the ring.
+     * @return Position of the next token, or the first token when the range wraps around the ring.
+     */
+    public synchronized long tokenAtOrAfter(long position) {
+        Long token = this.tokens.ceilingKey(position);
+        return token == null ? this.tokens.firstKey() : token;
+    }
+
+    /**
+     * Assigns every position of a range to a group. The range must not wrap around the ring.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of the new owner.
+     */
+    public synchronized void assign(long fromPosition, long toPosition, int groupId) {
+        // Tokens at both bounds keep the positions outside the range with their owners
+        this.tokens.putIfAbsent(fromPosition, this.ownerOf(fromPosition));
+        this.tokens.putIfAbsent(toPosition, this.ownerOf(toPosition));
+        for (Map.Entry<Long, Integer> token : this.tokens.subMap(fromPosition, false, toPosition, true).entrySet()) {
+            token.setValue(groupId);
+        }
+    }
+
+    /**
+     * @return Copy of the tokens and their owners, taken for a snapshot.
+     */
+    public synchronized TreeMap<Long, Integer> snapshot() {
+        return new TreeMap<Long, Integer>(this.tokens);
+    }
+
+    /**
+     * Replaces the tokens with the ones of a snapshot.
+     *
+     * @param tokens Tokens and their owners.
+     */
+    public synchronized void restore(Map<Long, Integer> tokens) {
+        this.tokens.clear();
+        this.tokens.putAll(tokens);
+    }
+
+    /**
+     * Checks whether a key hashes into a range.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param key          Key to check.
+     * @return true if the key belongs to the range.
+     */
+    public static boolean contains(long fromPosition, long toPosition, String key) {
+        long position = hash(key);
+        return position > fromPosition && position <= toPosition;
+    }
+
+    /**
+     * Hashes a string to a position on the ring using the first 8 bytes of its MD5 digest.
+     *
+     * @param value String to hash.
+     * @return Position on the ring.
+     */
+    public static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long position = 0;
+            for (int index = 0; index < 8; index++) {
+                position = (position << 8) | (digest[index] & 0xFF);
+            }
+            return position;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
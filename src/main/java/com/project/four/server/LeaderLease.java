@@ -0,0 +1,119 @@
+package com.project.four.server;
+
+/**
+ * LeaderLease keeps both sides of the Multi-Paxos leader lease.
+ * A follower grants the lease to the leader it knows on every heartbeat and, while the lease runs,
+ * refuses prepare requests from every other node. The leader holds the lease once a majority granted
+ * it and counts the lease from the moment it sent the heartbeat, shortened by a safety margin for
+ * clock drift, so it always expires on the leader before it expires on any follower.
+ * While the leader holds the lease no other node can get a majority to promise, so the leader's
+ * state is up to date and reads can be answered locally.
+ * Heartbeats also carry the leader's commit index, which lets a follower bound how stale its own
+ * state is without asking the leader.
+ * Times are taken from System.nanoTime so wall clock changes do not affect the lease.
+ */
+public class LeaderLease {
+    // Fraction of the lease the leader gives up to tolerate clock drift between nodes
+    private static final long DRIFT_DIVISOR = 10;
+
+    private final long durationNanos;
+    // Leader side
+    private long heldUntil = 0;
+    private boolean held = false;
+    // Follower side
+    private int grantedTo = -1;
+    private long grantedUntil = 0;
+    private boolean granted = false;
+    private long leaderCommitIndex = -1;
+    private long leaderCommitAt = 0;
+
+    /**
+     * @param duration Lease duration in milliseconds.
+     */
+    public LeaderLease(long duration) {
+        this.durationNanos = duration * 1_000_000L;
+    }
+
+    /**
+     * Follower side: grants or extends the lease of the given leader.
+     *
+     * @param leaderId    Server id of the leader asking for the lease.
+     * @param commitIndex Commit index of the leader when it sent the heartbeat.
+     * @return false if another node still holds a lease granted by this follower.
+     */
+    public synchronized boolean grant(int leaderId, long commitIndex) {
+        long now = System.nanoTime();
+        if (this.granted && this.grantedTo != leaderId && now - this.grantedUntil < 0) {
+            return false;
+        }
+        this.grantedTo = leaderId;
+        this.grantedUntil = now + this.durationNanos;
+        this.granted = true;
+        this.leaderCommitIndex = commitIndex;
+        this.leaderCommitAt = now;
+        return true;
+    }
+
+    /**
+     * Follower side: commit index of the leader reported by the latest granted heartbeat.
+     *
+     * @return Leader commit index or -1 if no heartbeat arrived yet.
+     */
+    public synchronized long getLeaderCommitIndex() {
+        return this.leaderCommitIndex;
+    }
+
+    /**
+     * Follower side: how stale a replica that applied its log up to the given slot is at most.
+     * The replica was up to date when the latest heartbeat arrived if it applied the commit index
+     * the heartbeat carried. The bound does not include the network delay of that heartbeat.
+     *
+     * @param appliedIndex Slot the replica applied its log up to.
+     * @return Milliseconds since the replica was known to be up to date, or -1 if that is unknown.
+     */
+    public synchronized long staleness(long appliedIndex) {
+        if (!this.granted || appliedIndex < this.leaderCommitIndex) {
+            return -1;
+        }
+        return (System.nanoTime() - this.leaderCommitAt) / 1_000_000L;
+    }
+
+    /**
+     * Follower side: checks whether a prepare request of the given node has to be refused.
+     *
+     * @param candidateId Server id of the node sending the prepare request.
+     * @return true if a lease granted to another node is still running.
+     */
+    public synchronized boolean blocks(int candidateId) {
+        return this.granted && this.grantedTo != candidateId && System.nanoTime() - this.grantedUntil < 0;
+    }
+
+    /**
+     * Leader side: extends the lease after a majority granted a heartbeat.
+     *
+     * @param sentAt System.nanoTime taken before the heartbeat was sent.
+     */
+    public synchronized void renew(long sentAt) {
+        long until = sentAt + this.durationNanos - this.durationNanos / DRIFT_DIVISOR;
+        if (!this.held || until - this.heldUntil > 0) {
+            this.heldUntil = until;
+        }
+        this.held = true;
+    }
+
+    /**
+     * Leader side: drops the lease, for example after losing leadership.
+     */
+    public synchronized void revoke() {
+        this.held = false;
+    }
+
+    /**
+     * Leader side: checks whether the lease is currently held.
+     *
+     * @return true if a majority granted the lease and it has not expired yet.
+     */
+    public synchronized boolean isHeld() {
+        return this.held && System.nanoTime() - this.heldUntil < 0;
+    }
+}
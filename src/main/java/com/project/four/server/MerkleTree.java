@@ -0,0 +1,123 @@
+package com.project.four.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * MerkleTree summarizes the key-value store of a replica in a binary hash tree over a fixed number
+ * of key-hash buckets. A leaf is the sum of the hashes of the entries in its bucket, so a write
+ * changes the leaf in constant time and only the nodes on the path to the root are hashed again.
+ * Two replicas with the same entries have the same root. Comparing the trees top-down finds the
+ * differing buckets while exchanging only the hashes of the subtrees that differ.
+ * Nodes are numbered like a heap: the root is 1, the children of node n are 2n and 2n + 1 and the
+ * leaf of bucket b is {@value #BUCKETS} + b.
+ */
+public class MerkleTree {
+    public static final int BUCKETS = 4096;
+
+    private final long[] nodes = new long[2 * BUCKETS];
+
+    public MerkleTree() {
+        this.rebuild(Map.of());
+    }
+
+    /**
+     * Finds the bucket of a key.
+     *
+     * @param key Key of an entry.
+     * @return Bucket of the key.
+     */
+    public static int bucketOf(String key) {
+        return (int) (mix(hash(key)) & (BUCKETS - 1));
+    }
+
+    /**
+     * @param node Node number.
+     * @return true if the node is the leaf of a bucket.
+     */
+    public static boolean isLeaf(int node) {
+        return node >= BUCKETS;
+    }
+
+    /**
+     * Records a write to an entry.
+     *
+     * @param key      Key of the entry.
+     * @param oldValue Value before the write, null if the key did not exist.
+     * @param newValue Value after the write, null if the key was deleted.
+     */
+    public synchronized void update(String key, Object oldValue, Object newValue) {
+        int node = BUCKETS + bucketOf(key);
+        long leaf = this.nodes[node];
+        if (oldValue != null) {
+            leaf -= entryHash(key, oldValue);
+        }
+        if (newValue != null) {
+            leaf += entryHash(key, newValue);
+        }
+        this.nodes[node] = leaf;
+        for (node /= 2; node >= 1; node /= 2) {
+            this.nodes[node] = combine(this.nodes[2 * node], this.nodes[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Computes the whole tree from the entries of a store.
+     *
+     * @param store Entries to summarize.
+     */
+    public synchronized void rebuild(Map<String, Object> store) {
+        Arrays.fill(this.nodes, 0);
+        for (Map.Entry<String, Object> entry : store.entrySet()) {
+            this.nodes[BUCKETS + bucketOf(entry.getKey())] += entryHash(entry.getKey(), entry.getValue());
+        }
+        for (int node = BUCKETS - 1; node >= 1; node--) {
+            this.nodes[node] = combine(this.nodes[2 * node], this.nodes[2 * node + 1]);
+        }
+    }
+
+    /**
+     * @param nodeIds Node numbers.
+     * @return Hashes of the nodes, in the same order.
+     */
+    public synchronized long[] hashes(int[] nodeIds) {
+        long[] hashes = new long[nodeIds.length];
+        for (int index = 0; index < nodeIds.length; index++) {
+            hashes[index] = this.nodes[nodeIds[index]];
+        }
+        return hashes;
+    }
+
+    private static long entryHash(String key, Object value) {
+        return mix(hash(key) * 31 + hash(Objects.toString(value)));
+    }
+
+    private static long combine(long left, long right) {
+        return mix(left * 0x9E3779B97F4A7C15L + right);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of a string, the same on every node.
+     */
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int index = 0; index < value.length(); index++) {
+            hash ^= value.charAt(index);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Final mixing step of MurmurHash3, spreads every input bit over the whole result.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+package com.project.four.server;
+
+import com.project.four.utills.Operation;
+
+import java.util.BitSet;
+
+/**
+ * PaxosInstance holds the acceptor and learner state of a single numbered slot of the replicated log.
+ */
+public class PaxosInstance {
+    private final long slot;
+    private long promisedBallot = -1;
+    private long acceptedBallot = -1;
+    private Operation acceptedValue = null;
+    private Operation chosenValue = null;
+    // Learner side: acceptors that reported accepting votedBallot in this slot
+    private long votedBallot = -1;
+    private final BitSet votes = new BitSet();
+
+    public PaxosInstance(long slot) {
+        this.slot = slot;
+    }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public long getPromisedBallot() {
+        return promisedBallot;
+    }
+
+    public void setPromisedBallot(long promisedBallot) {
+        this.promisedBallot = promisedBallot;
+    }
+
+    public long getAcceptedBallot() {
+        return acceptedBallot;
+    }
+
+    public Operation getAcceptedValue() {
+        return acceptedValue;
+    }
+
+    /**
+     * Records the value accepted for this slot together with the ballot it was accepted in.
+     *
+     * @param ballot Ballot of the accept request.
+     * @param value  Accepted operation.
+     */
+    public void setAccepted(long ballot, Operation value) {
+        this.acceptedBallot = ballot;
+        this.acceptedValue = value;
+    }
+
+    public Operation getChosenValue() {
+        return chosenValue;
+    }
+
+    public void setChosenValue(Operation chosenValue) {
+        this.chosenValue = chosenValue;
+    }
+
+    public boolean isChosen() {
+        return chosenValue != null;
+    }
+
+    /**
+     * Records that an acceptor accepted the given ballot in this slot. Votes for a lower ballot
+     * than the one currently counted are ignored and a higher ballot starts a new count.
+     *
+     * @param ballot     Ballot the acceptor accepted.
+     * @param acceptorId Id of the acceptor.
+     * @return Number of distinct acceptors that accepted the counted ballot.
+     */
+    public int vote(long ballot, int acceptorId) {
+        if (ballot < this.votedBallot) {
+            return 0;
+        }
+        if (ballot > this.votedBallot) {
+            this.votedBallot = ballot;
+            this.votes.clear();
+        }
+        this.votes.set(acceptorId);
+        return this.votes.cardinality();
+    }
+}
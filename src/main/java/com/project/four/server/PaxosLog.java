@@ -0,0 +1,660 @@
+package com.project.four.server;
+
+import com.project.four.utills.Operation;
+import com.project.four.utills.PaxosRejectException;
+import com.project.four.utills.RemoteBusinessException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * PaxosLog is the replicated command log. Every slot is an independent Paxos instance with its own
+ * promised and accepted ballots on the acceptor side and its chosen value on the learner side.
+ * Chosen values are applied strictly in slot order, which gives every replica the same apply order
+ * and keeps the history available for replay.
+ * A Multi-Paxos leader can additionally get a single range promise that covers every slot.
+ * With a write-ahead log, promises and accepts are on disk before they are answered, so an acceptor
+ * that restarts never breaks a promise it gave before. Chosen values are logged without waiting,
+ * indexed by slot, and serve both the recovery of the store and reads of slots this replica no
+ * longer holds in memory.
+ * Once a snapshot of the store covers a prefix of the log, the slots of that prefix are compacted:
+ * their instances are dropped and requests for them are rejected, and a checkpoint rewrites the
+ * remaining state so the write-ahead log segments before it can be deleted.
+ */
+public class PaxosLog {
+    // Record types of the write-ahead log
+    private static final byte PROMISE = 1;
+    private static final byte RANGE_PROMISE = 2;
+    private static final byte ACCEPT = 3;
+    private static final byte CHOSEN = 4;
+    private static final byte ROUND = 5;
+    private static final byte OWN_SLOT = 6;
+    // Ballot rounds and own slots reserved with one synchronous record
+    private static final long RESERVE_CHUNK = 1024;
+
+    private final ConcurrentSkipListMap<Long, PaxosInstance> instances = new ConcurrentSkipListMap<Long, PaxosInstance>();
+    private final AtomicLong nextSlot = new AtomicLong(0);
+    // Both indexes only change under the log's monitor, readers do not take it
+    private volatile long appliedIndex = -1;
+    // Highest slot known to be chosen on this replica
+    private volatile long chosenIndex = -1;
+    // Ballot promised to a Multi-Paxos leader for all slots
+    private long rangePromise = -1;
+    // Range promises exclude single slot promises and accepts so that a promise never misses a concurrent accept
+    private final ReadWriteLock rangeLock = new ReentrantReadWriteLock();
+    // Slots this replica is currently proposing for, so concurrent local proposers pick different slots
+    private final Set<Long> claimed = ConcurrentHashMap.newKeySet();
+    private volatile WriteAheadLog wal = null;
+    // Ballot rounds below this one may have been used before a restart
+    private long reservedRound = 0;
+    // Own rotating slots below this one may have been used before a restart
+    private long reservedSlot = -1;
+    // Highest ballot found in the write-ahead log
+    private long recoveredBallot = -1;
+    // Slots up to this one were dropped after a snapshot
+    private volatile long compactedIndex = -1;
+
+    /**
+     * Returns the instance of the given slot, creating an empty one if needed.
+     *
+     * @param slot Slot number.
+     * @return Instance of the slot.
+     */
+    public PaxosInstance instance(long slot) {
+        return this.instances.computeIfAbsent(slot, PaxosInstance::new);
+    }
+
+    /**
+     * Reserves the next free slot of the log for a new proposal.
+     *
+     * @return Slot number reserved for the proposal.
+     */
+    public long allocateSlot() {
+        return this.nextSlot.getAndIncrement();
+    }
+
+    /**
+     * Moves the next free slot past the given slot if it is not already ahead of it.
+     *
+     * @param slot Slot that is known to be in use.
+     */
+    public void reserveUpTo(long slot) {
+        this.nextSlot.accumulateAndGet(slot + 1, Math::max);
+    }
+
+    /**
+     * Returns the lowest slot above the applied index that this replica has not seen chosen.
+     * A proposer without a stable leader has to fill this slot first so the log never keeps a hole.
+     *
+     * @return First slot that is not known to be chosen.
+     */
+    public synchronized long firstUnchosenSlot() {
+        long slot = this.appliedIndex + 1;
+        PaxosInstance instance;
+        while ((instance = this.instances.get(slot)) != null && instance.isChosen()) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * Claims the lowest slot that is neither known to be chosen nor claimed by another local proposer.
+     * The claim has to be released with {@link #release(long)} once the proposal finished.
+     *
+     * @return Claimed slot.
+     */
+    public synchronized long claimFirstUnchosenSlot() {
+        long slot = this.firstUnchosenSlot();
+        PaxosInstance instance;
+        while (this.claimed.contains(slot) || ((instance = this.instances.get(slot)) != null && instance.isChosen())) {
+            slot++;
+        }
+        this.claimed.add(slot);
+        return slot;
+    }
+
+    /**
+     * Releases a slot claimed with {@link #claimFirstUnchosenSlot()}.
+     *
+     * @param slot Claimed slot.
+     */
+    public void release(long slot) {
+        this.claimed.remove(slot);
+    }
+
+    /**
+     * Phase 1 for a single slot. The ballot must be higher than both the promise made for this slot
+     * and the range promise made to a Multi-Paxos leader.
+     *
+     * @param slot   Slot to prepare.
+     * @param ballot Ballot of the proposer.
+     * @return The operation accepted in this slot, or null if nothing was accepted yet.
+     * @throws PaxosRejectException if a higher or equal ballot was already promised.
+     */
+    public Operation promise(long slot, long ballot) throws RemoteBusinessException {
+        this.checkCompacted(slot);
+        PaxosInstance instance = this.instance(slot);
+        Operation accepted;
+        long seq;
+        this.rangeLock.readLock().lock();
+        try {
+            synchronized (instance) {
+                if (ballot <= this.rangePromise || ballot <= instance.getPromisedBallot()) {
+                    throw new PaxosRejectException("Lower Priority Proposed, Restart Transaction", Math.max(this.rangePromise, instance.getPromisedBallot()));
+                }
+                instance.setPromisedBallot(ballot);
+                accepted = instance.getAcceptedValue();
+                seq = this.log(PROMISE, slot, ballot, null);
+            }
+        } finally {
+            this.rangeLock.readLock().unlock();
+        }
+        this.sync(seq);
+        return accepted;
+    }
+
+    /**
+     * Phase 1 for every slot at once, used by a Multi-Paxos leader.
+     *
+     * @param ballot   Ballot of the leader.
+     * @param fromSlot First slot whose accepted values are returned.
+     * @return Operations accepted from the given slot onwards.
+     * @throws PaxosRejectException if a higher or equal ballot was already promised for the range.
+     */
+    public List<Operation> promiseRange(long ballot, long fromSlot) throws RemoteBusinessException {
+        List<Operation> accepted;
+        long seq;
+        this.rangeLock.writeLock().lock();
+        try {
+            if (ballot <= this.rangePromise) {
+                throw new PaxosRejectException("Lower Priority Proposed, Restart Transaction", this.rangePromise);
+            }
+            this.rangePromise = ballot;
+            accepted = this.acceptedFrom(fromSlot);
+            seq = this.log(RANGE_PROMISE, -1, ballot, null);
+        } finally {
+            this.rangeLock.writeLock().unlock();
+        }
+        this.sync(seq);
+        return accepted;
+    }
+
+    /**
+     * Phase 2 for the operation's slot. The ballot must not be lower than any promise covering the slot.
+     *
+     * @param operation Operation carrying its slot and ballot.
+     * @throws PaxosRejectException if a higher ballot was already promised.
+     */
+    public void accept(Operation operation) throws RemoteBusinessException {
+        this.checkCompacted(operation.getSlot());
+        PaxosInstance instance = this.instance(operation.getSlot());
+        long seq;
+        this.rangeLock.readLock().lock();
+        try {
+            synchronized (instance) {
+                long ballot = operation.getProposalId();
+                if (ballot < this.rangePromise || ballot < instance.getPromisedBallot()) {
+                    throw new PaxosRejectException("Proposal ID lower in Accept-Request phase", Math.max(this.rangePromise, instance.getPromisedBallot()));
+                }
+                instance.setPromisedBallot(ballot);
+                instance.setAccepted(ballot, operation);
+                seq = this.log(ACCEPT, operation.getSlot(), ballot, operation);
+            }
+        } finally {
+            this.rangeLock.readLock().unlock();
+        }
+        this.reserveUpTo(operation.getSlot());
+        this.sync(seq);
+    }
+
+    /**
+     * Returns all values accepted by this acceptor starting from the given slot.
+     *
+     * @param fromSlot First slot to include.
+     * @return Accepted operations in slot order.
+     */
+    public List<Operation> acceptedFrom(long fromSlot) {
+        List<Operation> result = new ArrayList<Operation>();
+        for (PaxosInstance instance : this.instances.tailMap(fromSlot, true).values()) {
+            synchronized (instance) {
+                if (instance.getAcceptedValue() != null) {
+                    result.add(instance.getAcceptedValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value chosen for the slot, or the value this acceptor accepted with the given ballot.
+     *
+     * @param slot   Slot number.
+     * @param ballot Ballot the value was chosen with.
+     * @return The matching operation, or null if this replica does not know it.
+     */
+    public Operation valueOf(long slot, long ballot) {
+        PaxosInstance instance = this.instances.get(slot);
+        if (instance == null) {
+            return null;
+        }
+        synchronized (instance) {
+            if (instance.isChosen()) {
+                return instance.getChosenValue();
+            }
+            if (instance.getAcceptedBallot() == ballot) {
+                return instance.getAcceptedValue();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param slot Slot number.
+     * @return true if this replica knows the value chosen for the slot.
+     */
+    public boolean isChosen(long slot) {
+        PaxosInstance instance = this.instances.get(slot);
+        if (instance == null) {
+            return false;
+        }
+        synchronized (instance) {
+            return instance.isChosen();
+        }
+    }
+
+    /**
+     * Counts an acceptor's accept for the operation's slot and ballot on the learner side.
+     * Votes are tracked per slot, so identical commands in different slots never share votes.
+     *
+     * @param operation  Accepted operation carrying its slot and ballot.
+     * @param acceptorId Id of the acceptor that accepted it.
+     * @param quorum     Number of acceptors that have to accept the same ballot.
+     * @return true exactly once, for the vote that completes the quorum of a slot not yet chosen.
+     */
+    public boolean vote(Operation operation, int acceptorId, int quorum) {
+        if (operation.getSlot() <= this.compactedIndex) {
+            return false;
+        }
+        PaxosInstance instance = this.instance(operation.getSlot());
+        synchronized (instance) {
+            if (instance.isChosen()) {
+                return false;
+            }
+            return instance.vote(operation.getProposalId(), acceptorId) == quorum;
+        }
+    }
+
+    /**
+     * Marks the operation as chosen for its slot. A slot keeps the first value chosen for it.
+     * The value is set under the instance monitor as well, because the acceptor and learner
+     * paths only synchronize on the instance.
+     *
+     * @param operation Chosen operation carrying its slot.
+     */
+    public synchronized void choose(Operation operation) {
+        if (operation.getSlot() <= this.compactedIndex) {
+            return;
+        }
+        PaxosInstance instance = this.instance(operation.getSlot());
+        synchronized (instance) {
+            if (!instance.isChosen()) {
+                instance.setChosenValue(operation);
+                this.log(CHOSEN, operation.getSlot(), -1, operation);
+            }
+        }
+        this.chosenIndex = Math.max(this.chosenIndex, operation.getSlot());
+        this.reserveUpTo(operation.getSlot());
+    }
+
+    /**
+     * Returns the chosen operation directly after the applied index and advances the applied index,
+     * or null when the next slot is not chosen yet.
+     *
+     * @return Next operation to apply.
+     */
+    public synchronized Operation pollApplicable() {
+        PaxosInstance instance = this.instances.get(this.appliedIndex + 1);
+        if (instance == null || !instance.isChosen()) {
+            return null;
+        }
+        this.appliedIndex++;
+        this.notifyAll();
+        return instance.getChosenValue();
+    }
+
+    /**
+     * Waits until the given slot has been applied. Proposals that complete out of order use this
+     * to return to the client only after every earlier slot was applied as well.
+     *
+     * @param slot    Slot to wait for.
+     * @param timeout Maximum milliseconds to wait, 0 waits without limit.
+     * @return true if the slot was applied in time.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public synchronized boolean awaitApplied(long slot, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (this.appliedIndex < slot) {
+            if (timeout <= 0) {
+                this.wait();
+            } else {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                this.wait(remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns chosen operations in slot order starting from the given slot, stopping at the first hole.
+     * Used to replay the history of the log. Slots not held in memory are read from the write-ahead log.
+     *
+     * @param fromSlot   First slot to include.
+     * @param maxEntries Maximum number of operations returned.
+     * @return Chosen operations in slot order.
+     */
+    public synchronized List<Operation> chosenFrom(long fromSlot, int maxEntries) {
+        List<Operation> result = new ArrayList<Operation>();
+        long slot = fromSlot;
+        PaxosInstance instance;
+        while (result.size() < maxEntries) {
+            Operation value = (instance = this.instances.get(slot)) != null && instance.isChosen() ? instance.getChosenValue() : this.loggedChosen(slot);
+            if (value == null) {
+                break;
+            }
+            result.add(value);
+            slot++;
+        }
+        return result;
+    }
+
+    /**
+     * Continues the log after a snapshot restored on restart. The slots the snapshot covers count as
+     * applied and the slots dropped before it as compacted.
+     *
+     * @param index    Applied index of the snapshot.
+     * @param logStart Highest slot dropped from the log when the snapshot was taken.
+     */
+    public synchronized void restore(long index, long logStart) {
+        this.appliedIndex = Math.max(this.appliedIndex, index);
+        this.chosenIndex = Math.max(this.chosenIndex, index);
+        this.compactedIndex = Math.max(this.compactedIndex, logStart);
+        this.reserveUpTo(index);
+    }
+
+    /**
+     * Continues the log after a snapshot received from a peer. Every slot the snapshot covers
+     * counts as applied and is dropped, because this replica does not know their values.
+     *
+     * @param index Applied index of the snapshot.
+     */
+    public synchronized void install(long index) {
+        if (index <= this.appliedIndex) {
+            return;
+        }
+        this.appliedIndex = index;
+        this.chosenIndex = Math.max(this.chosenIndex, index);
+        this.reserveUpTo(index);
+        this.compact(index);
+        this.notifyAll();
+    }
+
+    /**
+     * Drops the instances of every applied slot up to the given one. Later promises and accepts
+     * for these slots are rejected, a replica that still needs them has to catch up from a snapshot.
+     *
+     * @param slot Highest slot to drop.
+     */
+    public synchronized void compact(long slot) {
+        long upTo = Math.min(slot, this.appliedIndex);
+        if (upTo <= this.compactedIndex) {
+            return;
+        }
+        this.compactedIndex = upTo;
+        this.instances.headMap(upTo, true).clear();
+    }
+
+    /**
+     * Rewrites the state still held in memory to the write-ahead log and deletes the segments that
+     * only hold older records. Called after {@link #compact(long)}.
+     *
+     * @throws RemoteBusinessException if the write-ahead log failed.
+     */
+    public void checkpoint() throws RemoteBusinessException {
+        WriteAheadLog wal = this.wal;
+        if (wal == null) {
+            return;
+        }
+        long mark = wal.mark();
+        // Every record is written under the lock its state is changed under, so the order stays right
+        this.rangeLock.readLock().lock();
+        try {
+            if (this.rangePromise >= 0) {
+                this.log(RANGE_PROMISE, -1, this.rangePromise, null);
+            }
+        } finally {
+            this.rangeLock.readLock().unlock();
+        }
+        synchronized (this) {
+            this.log(ROUND, -1, this.reservedRound, null);
+            if (this.reservedSlot >= 0) {
+                this.log(OWN_SLOT, this.reservedSlot, -1, null);
+            }
+        }
+        for (PaxosInstance instance : this.instances.values()) {
+            synchronized (instance) {
+                if (instance.getPromisedBallot() >= 0) {
+                    this.log(PROMISE, instance.getSlot(), instance.getPromisedBallot(), null);
+                }
+                if (instance.getAcceptedValue() != null) {
+                    this.log(ACCEPT, instance.getSlot(), instance.getAcceptedBallot(), instance.getAcceptedValue());
+                }
+                if (instance.isChosen()) {
+                    this.log(CHOSEN, instance.getSlot(), -1, instance.getChosenValue());
+                }
+            }
+        }
+        this.sync(wal.mark());
+        wal.deleteThrough(mark);
+    }
+
+    /**
+     * Makes sure no ballot of the given round can be handed out again after a restart. Rounds are
+     * reserved in chunks, so only every {@value #RESERVE_CHUNK}th round waits for the disk.
+     *
+     * @param round Round of a ballot about to be used.
+     * @throws RemoteBusinessException if the write-ahead log failed.
+     */
+    public void reserveRound(long round) throws RemoteBusinessException {
+        long seq;
+        synchronized (this) {
+            if (this.wal == null || round < this.reservedRound) {
+                return;
+            }
+            this.reservedRound = round + RESERVE_CHUNK;
+            seq = this.log(ROUND, -1, this.reservedRound, null);
+        }
+        this.sync(seq);
+    }
+
+    /**
+     * Makes sure an own rotating slot is not proposed in again with the owner ballot after a restart.
+     *
+     * @param slot Own slot about to be used.
+     * @throws RemoteBusinessException if the write-ahead log failed.
+     */
+    public void reserveSlot(long slot) throws RemoteBusinessException {
+        long seq;
+        synchronized (this) {
+            if (this.wal == null || slot < this.reservedSlot) {
+                return;
+            }
+            this.reservedSlot = slot + RESERVE_CHUNK;
+            seq = this.log(OWN_SLOT, this.reservedSlot, -1, null);
+        }
+        this.sync(seq);
+    }
+
+    /**
+     * Attaches a write-ahead log and restores the promises, accepts and chosen values recorded in it.
+     * Has to be called before the log is used.
+     *
+     * @param wal Write-ahead log of this replica.
+     * @throws IOException if the write-ahead log can not be read.
+     */
+    public synchronized void recover(WriteAheadLog wal) throws IOException {
+        wal.replay((type, payload) -> {
+            long slot = payload.getLong();
+            long ballot = payload.getLong();
+            this.recoveredBallot = Math.max(this.recoveredBallot, ballot);
+            if (slot <= this.compactedIndex && (type == PROMISE || type == ACCEPT || type == CHOSEN)) {
+                // Covered by the restored snapshot
+                return;
+            }
+            switch (type) {
+                case PROMISE -> {
+                    PaxosInstance instance = this.instance(slot);
+                    instance.setPromisedBallot(Math.max(instance.getPromisedBallot(), ballot));
+                }
+                case RANGE_PROMISE -> this.rangePromise = Math.max(this.rangePromise, ballot);
+                case ACCEPT -> {
+                    PaxosInstance instance = this.instance(slot);
+                    instance.setPromisedBallot(Math.max(instance.getPromisedBallot(), ballot));
+                    if (ballot >= instance.getAcceptedBallot()) {
+                        instance.setAccepted(ballot, decode(payload));
+                    }
+                    this.reserveUpTo(slot);
+                }
+                case CHOSEN -> {
+                    PaxosInstance instance = this.instance(slot);
+                    if (!instance.isChosen()) {
+                        instance.setChosenValue(decode(payload));
+                    }
+                    this.chosenIndex = Math.max(this.chosenIndex, slot);
+                    this.reserveUpTo(slot);
+                }
+                case ROUND -> this.reservedRound = Math.max(this.reservedRound, ballot);
+                case OWN_SLOT -> this.reservedSlot = Math.max(this.reservedSlot, slot);
+                default -> throw new IOException("Unknown write-ahead log record " + type);
+            }
+        });
+        this.wal = wal;
+    }
+
+    /**
+     * Appends a record to the write-ahead log without waiting for the disk.
+     *
+     * @return Sequence number of the record, 0 without write-ahead log.
+     */
+    private long log(byte type, long slot, long ballot, Operation operation) {
+        if (this.wal == null) {
+            return 0;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(slot);
+            out.writeLong(ballot);
+            if (operation != null) {
+                ObjectOutputStream objects = new ObjectOutputStream(out);
+                objects.writeObject(operation);
+                objects.flush();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        // Chosen values are indexed so single slots can be read back
+        return this.wal.append(type, type == CHOSEN ? slot : -1, bytes.toByteArray());
+    }
+
+    /**
+     * Reads the value chosen for a slot from the write-ahead log.
+     *
+     * @param slot Slot number.
+     * @return The chosen operation, or null if the write-ahead log has no chosen record for the slot.
+     */
+    private Operation loggedChosen(long slot) {
+        WriteAheadLog wal = this.wal;
+        if (wal == null) {
+            return null;
+        }
+        try {
+            ByteBuffer payload = wal.read(slot);
+            if (payload == null) {
+                return null;
+            }
+            payload.position(payload.position() + 2 * Long.BYTES);
+            return decode(payload);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Waits until a record is on disk.
+     *
+     * @param seq Sequence number of the record.
+     * @throws RemoteBusinessException if the write-ahead log failed.
+     */
+    private void sync(long seq) throws RemoteBusinessException {
+        if (seq <= 0) {
+            return;
+        }
+        try {
+            this.wal.sync(seq);
+        } catch (IOException e) {
+            throw new RemoteBusinessException("Write-ahead log failed: " + e.getMessage());
+        }
+    }
+
+    private void checkCompacted(long slot) throws RemoteBusinessException {
+        if (slot <= this.compactedIndex) {
+            throw new RemoteBusinessException("Slot " + slot + " was compacted into a snapshot");
+        }
+    }
+
+    private static Operation decode(ByteBuffer payload) throws IOException {
+        try {
+            return (Operation) new ObjectInputStream(WriteAheadLog.inputStream(payload)).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public synchronized long getReservedRound() {
+        return reservedRound;
+    }
+
+    public synchronized long getReservedSlot() {
+        return reservedSlot;
+    }
+
+    public synchronized long getRecoveredBallot() {
+        return recoveredBallot;
+    }
+
+    public long getCompactedIndex() {
+        return compactedIndex;
+    }
+
+    public long getAppliedIndex() {
+        return appliedIndex;
+    }
+
+    public long getChosenIndex() {
+        return chosenIndex;
+    }
+}
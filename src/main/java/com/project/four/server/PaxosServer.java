@@ -5,12 +5,14 @@ import com.project.four.interfaces.LearnerInterface;
 import com.project.four.interfaces.ProposerInterface;
 import com.project.four.interfaces.StoreService;
 import com.project.four.server.ProjectEnums.ServiceKeys;
+import com.project.four.server.ProjectEnums.InstanceStatus;
 import com.project.four.server.ProjectEnums.MethodType;
 import com.project.four.utills.*;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.rmi.RemoteException;
@@ -21,6 +23,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * PaxosServer class that extends Server and implements ProposerInterface, AcceptorInterface, LearnerInterface, and StoreService.
@@ -29,18 +36,76 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
     // Fields to maintain the state and configuration of the Paxos server
     private final List<AcceptorInterface> acceptors = new LinkedList<AcceptorInterface>();
     private final List<LearnerInterface> learners = new LinkedList<LearnerInterface>();
-    private int numServers = 0;
     private int serverId = -1;
-    private Map<String, Operation> acceptedPaxosKeys = new ConcurrentHashMap<String, Operation>();
-    private Map<Operation, Integer> learnerMap = new ConcurrentHashMap<Operation, Integer>();
-    private long lastPreparedProposalId;
     private boolean logs = false;
     private AcceptorInterface leaderAccept = null;
     private LearnerInterface leaderLearn = null;
     private long delay = 0;
     private ExecutorService learnExecutor = Executors.newSingleThreadExecutor();
+    private ExecutorService rpcExecutor = Executors.newCachedThreadPool();
+    private QuorumCall quorumCall = null;
+    private BallotGenerator ballots = null;
+    private CommandBatcher batcher = null;
+    // Batches are applied under the write lock so reads never see half of a batch
+    private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
     private int leaderServerId = -1;
     private boolean leaderBased = false;
+    private boolean multiPaxos = false;
+    // Proposers tell learners about chosen slots instead of acceptors broadcasting every accept
+    private boolean chosenNotify = false;
+    private PaxosLog paxosLog = new PaxosLog();
+    private volatile long leaderBallot = -1;
+    private volatile boolean leaderPrepared = false;
+    // Limits the number of log slots the leader has in flight at the same time
+    private Semaphore pipeline = null;
+    // Leader lease for local linearizable reads, null when leases are disabled
+    private LeaderLease lease = null;
+    // Leaderless commit path, null unless leaderlessCommit is enabled without a leader
+    private EgalitarianLog egalitarianLog = null;
+    // Round-robin slot ownership, null unless rotatingSlots is enabled
+    private RotatingSlots rotation = null;
+    private final AtomicBoolean skipAnnouncing = new AtomicBoolean(false);
+    // Ring ranges owned by the groups as applied from this group's log, null with a single group
+    private HashRing ranges = null;
+    private RangeMigrator migrator = null;
+    // Writes to owned ranges hold the read lock until they are applied, a hand-off takes the write lock
+    private final ReadWriteLock rangeLock = new ReentrantReadWriteLock();
+    // Range copied to another group and the keys written in it since the copy started
+    private volatile long[] migratingRange = null;
+    private volatile Set<String> migrationChanged = null;
+    // Chosen values per request when a replica catches up from a peer
+    private static final int CATCH_UP_BATCH = 512;
+    // Milliseconds a hole in the log may stay open before it is repaired, pipelined slots arrive out of order
+    private static final long GAP_GRACE = 5;
+    // Minimum milliseconds between two probes for chosen values this replica missed at the end of the log
+    private static final long GAP_PROBE_INTERVAL = 100;
+    // Wakes the gap repair thread when a slot beyond the next one to apply was chosen
+    private final Object gapSignal = new Object();
+    // Durable acceptor state, null unless walDirectory is configured
+    private WriteAheadLog wal = null;
+    // Set while the store is rebuilt from the write-ahead log, internal commands are not repeated then
+    private boolean replaying = false;
+    // Copy-on-write snapshots of the store, null unless snapshotInterval is configured
+    private Snapshotter snapshotter = null;
+    // Merkle tree over the store for anti-entropy, null unless antiEntropyInterval is configured
+    private MerkleTree merkle = null;
+    // Chosen slots are applied one at a time in slot order, acceptor state is locked per instance in the log
+    private final Object applyLock = new Object();
+    // Guards the acceptor and learner lists, the number of live servers and the leader references
+    private final Object membershipLock = new Object();
+    // Runs phase 1 for a new leader once even if several commands trigger it
+    private final Object leadershipLock = new Object();
+    // Orders updates of the same key in the classic leader path, other keys are not blocked
+    private static final int KEY_STRIPES = 64;
+    private final Object[] keyStripes = new Object[KEY_STRIPES];
+    private final AtomicBoolean electing = new AtomicBoolean(false);
+    // Phi-accrual failure detector fed by the heartbeats of the other nodes
+    private FailureDetector detector = null;
+    // Acceptors and learners of suspected nodes, put back when their heartbeats resume
+    private final Map<Integer, AcceptorInterface> suspectedAcceptors = new HashMap<Integer, AcceptorInterface>();
+    private final Map<Integer, LearnerInterface> suspectedLearners = new HashMap<Integer, LearnerInterface>();
+    // Nodes with a heartbeat in flight
+    private final Set<Integer> pinging = ConcurrentHashMap.newKeySet();
 
 
     /**
@@ -82,6 +147,68 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
         fullConf.setAcceptRandomErrorProbability(acceptRandomErrorProbability);
         fullConf.setDelay((long)config.get("delay"));
         fullConf.setAllowNodeRestart((boolean) config.get("allowNodeRestart"));
+        if (config.containsKey("multiPaxos")) {
+            fullConf.setMultiPaxos((boolean) config.get("multiPaxos"));
+        }
+        if (config.containsKey("batchSize")) {
+            fullConf.setBatchSize((int)(long) config.get("batchSize"));
+        }
+        if (config.containsKey("batchDelay")) {
+            fullConf.setBatchDelay((long) config.get("batchDelay"));
+        }
+        if (config.containsKey("pipelineWindow")) {
+            fullConf.setPipelineWindow((int)(long) config.get("pipelineWindow"));
+        }
+        if (config.containsKey("chosenNotify")) {
+            fullConf.setChosenNotify((boolean) config.get("chosenNotify"));
+        }
+        if (config.containsKey("leaseDuration")) {
+            fullConf.setLeaseDuration((long) config.get("leaseDuration"));
+        }
+        if (config.containsKey("prepareQuorum")) {
+            fullConf.setPrepareQuorum((int)(long) config.get("prepareQuorum"));
+        }
+        if (config.containsKey("acceptQuorum")) {
+            fullConf.setAcceptQuorum((int)(long) config.get("acceptQuorum"));
+        }
+        // Flexible Paxos is only safe if every prepare quorum intersects every accept quorum
+        int nodes = participantsConfs.size();
+        int prepareQuorum = fullConf.getPrepareQuorum() > 0 ? fullConf.getPrepareQuorum() : nodes / 2 + 1;
+        int acceptQuorum = fullConf.getAcceptQuorum() > 0 ? fullConf.getAcceptQuorum() : nodes / 2 + 1;
+        if (prepareQuorum > nodes || acceptQuorum > nodes || prepareQuorum + acceptQuorum <= nodes) {
+            throw new IllegalArgumentException("Invalid quorums prepareQuorum=" + prepareQuorum + " acceptQuorum="
+                    + acceptQuorum + " for " + nodes + " nodes, prepareQuorum + acceptQuorum has to exceed the number of nodes");
+        }
+        if (config.containsKey("thriftyAccept")) {
+            fullConf.setThriftyAccept((boolean) config.get("thriftyAccept"));
+        }
+        if (config.containsKey("leaderlessCommit")) {
+            fullConf.setLeaderlessCommit((boolean) config.get("leaderlessCommit"));
+        }
+        if (config.containsKey("rotatingSlots")) {
+            fullConf.setRotatingSlots((boolean) config.get("rotatingSlots"));
+        }
+        if (config.containsKey("groups")) {
+            fullConf.setGroups((int)(long) config.get("groups"));
+        }
+        if (config.containsKey("walDirectory")) {
+            fullConf.setWalDirectory((String) config.get("walDirectory"));
+        }
+        if (config.containsKey("walSegmentSize")) {
+            fullConf.setWalSegmentSize((long) config.get("walSegmentSize"));
+        }
+        if (config.containsKey("snapshotInterval")) {
+            fullConf.setSnapshotInterval((long) config.get("snapshotInterval"));
+        }
+        if (config.containsKey("antiEntropyInterval")) {
+            fullConf.setAntiEntropyInterval((long) config.get("antiEntropyInterval"));
+        }
+        if (config.containsKey("heartbeatInterval")) {
+            fullConf.setHeartbeatInterval((long) config.get("heartbeatInterval"));
+        }
+        if (config.containsKey("suspicionThreshold")) {
+            fullConf.setSuspicionThreshold((double) config.get("suspicionThreshold"));
+        }
         return fullConf;
     }
 
@@ -119,73 +246,217 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
     public void startServer() throws IOException {
         this.logs = this.sConfig.isLogs();
         this.stubRPC = (StoreService) UnicastRemoteObject.exportObject((StoreService) this, 0);
-        this.registryRPC = LocateRegistry.createRegistry(this.sConfig.getRpcPort());
-        this.registryRPC.rebind(this.sConfig.getServiceKey().toString(), this);
-        this.registryRPC.rebind(ServiceKeys.AcceptorService.toString(), this);
-        this.registryRPC.rebind(ServiceKeys.LearnerService.toString(), this);
+        int groupId = this.sConfig.getGroupId();
+        if (groupId == 0) {
+            this.registryRPC = LocateRegistry.createRegistry(this.sConfig.getRpcPort());
+        } else {
+            // Further groups of the node share the registry created by group 0
+            this.registryRPC = LocateRegistry.getRegistry(this.sConfig.getServerHost(), this.sConfig.getRpcPort());
+        }
+        this.registryRPC.rebind(this.sConfig.getServiceKey().forGroup(groupId), this);
+        this.registryRPC.rebind(ServiceKeys.AcceptorService.forGroup(groupId), this);
+        this.registryRPC.rebind(ServiceKeys.LearnerService.forGroup(groupId), this);
         final PaxosServer self = this;
-        // starting cleanup thread
-        Future<?> futureCleanUp = this.executor.submit(new Runnable() {
+        // Starting failure detector thread
+        Future<?> futureFailureDetector = this.executor.submit(new Runnable() {
             @Override
             public void run() {
-                self.logger("CleanUp thread started");
-                try {
-                    // Delay Starting
-                    if (delay > 0) {
-                        Thread.sleep(delay);
+                self.logger("Failure detector thread started");
+                long interval = Math.max(1, self.sConfig.getHeartbeatInterval());
+                while (!Utills.checkInterrupt()) {
+                    try {
+                        Thread.sleep(interval);
+                        if (!(boolean) config.get("serverStarted")) {
+                            continue;
+                        }
+                        self.sendHeartbeats();
+                        self.detector.check();
+                        if (self.leaderBased && !self.checkLeaderAlive()) {
+                            self.electLeaderAsync();
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        self.loggerEx(e);
                     }
-                } catch (InterruptedException e) {
-                    // Ignore
                 }
-                while ((boolean) config.get("serverStarted") && !Utills.checkInterrupt()) {
-                    try {
-                        // Check all servers
-                        int index = -1;
+            }
+        });
+        this.futureList.add(futureFailureDetector);
+        if (this.batcher != null) {
+            // Starting batch flush thread
+            this.futureList.add(this.executor.submit(this.batcher));
+        }
+        if (this.egalitarianLog != null) {
+            // Starting recovery thread for leaderless instances left unfinished
+            Future<?> futureRecovery = this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    self.logger("Recovery thread started");
+                    long interval = Math.max(1, delay);
+                    while (!Utills.checkInterrupt()) {
                         try {
-                            for (AcceptorInterface acceptorInterface: self.getAcceptors()) {
-                                index++;
-                                if (acceptorInterface != null) {
-                                    acceptorInterface.getAcceptorId();
-                                }
+                            Thread.sleep(interval);
+                            if (!(boolean) config.get("serverStarted")) {
+                                continue;
+                            }
+                            for (long instanceId : self.egalitarianLog.blockingInstances(interval * self.sConfig.getRequestAttempts())) {
+                                self.recoverInstance(instanceId);
                             }
+                            self.truncateInstances();
+                        } catch (InterruptedException e) {
+                            return;
                         } catch (Exception e) {
-                            if (index > -1) {
-                                self.handleParticipantServerFail(index);
+                            self.loggerEx(e);
+                        }
+                    }
+                }
+            });
+            this.futureList.add(futureRecovery);
+        }
+        if (this.rotation != null) {
+            // Starting thread filling the slots of failed or silent owners
+            Future<?> futureRevoke = this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    self.logger("Revocation thread started");
+                    long interval = Math.max(1, delay);
+                    long lastApplied = -1;
+                    long stuckSince = System.currentTimeMillis();
+                    while (!Utills.checkInterrupt()) {
+                        try {
+                            Thread.sleep(interval);
+                            if (!(boolean) config.get("serverStarted")) {
+                                continue;
+                            }
+                            long applied = self.paxosLog.getAppliedIndex();
+                            long now = System.currentTimeMillis();
+                            if (applied != lastApplied || self.paxosLog.getChosenIndex() <= applied) {
+                                lastApplied = applied;
+                                stuckSince = now;
+                                continue;
+                            }
+                            int owner = self.rotation.ownerOf(applied + 1);
+                            if (self.getIndexAccept(owner) == null || now - stuckSince >= interval * self.sConfig.getRequestAttempts()) {
+                                self.revokeSlots(applied + 1, owner);
+                                stuckSince = now;
                             }
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            self.loggerEx(e);
                         }
-                    } catch (Exception e) {
-                        self.loggerEx(e);
                     }
                 }
-            }
-        });
-        this.futureList.add(futureCleanUp);
-        if (this.leaderBased) {
-            // Starting leader election thread
-            Future<?> futureLeaderThread = this.executor.submit(new Runnable() {
+            });
+            this.futureList.add(futureRevoke);
+        }
+        if (this.egalitarianLog == null) {
+            // Starting thread pulling chosen values this replica missed from its peers
+            Future<?> futureGapRepair = this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    self.logger("Gap repair thread started");
+                    long interval = Math.max(GAP_PROBE_INTERVAL, delay);
+                    long lastApplied = -1;
+                    long nextAttempt = 0;
+                    boolean hole = false;
+                    while (!Utills.checkInterrupt()) {
+                        try {
+                            synchronized (self.gapSignal) {
+                                self.gapSignal.wait(hole ? GAP_GRACE : interval);
+                            }
+                            if (!(boolean) config.get("serverStarted")) {
+                                continue;
+                            }
+                            long applied = self.paxosLog.getAppliedIndex();
+                            hole = self.paxosLog.getChosenIndex() > applied;
+                            if (hole && applied != lastApplied) {
+                                // Still progressing, the missing slots may be on their way
+                                lastApplied = applied;
+                                continue;
+                            }
+                            long now = System.currentTimeMillis();
+                            if (now < nextAttempt) {
+                                continue;
+                            }
+                            // Peers that had nothing are asked again only after the probe interval
+                            nextAttempt = self.repairGap() > 0 ? now : now + interval;
+                            lastApplied = self.paxosLog.getAppliedIndex();
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            self.loggerEx(e);
+                        }
+                    }
+                }
+            });
+            this.futureList.add(futureGapRepair);
+        }
+        if (this.merkle != null) {
+            // Starting thread comparing the store with the reference replica
+            Future<?> futureAntiEntropy = this.executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    self.logger("Anti-entropy thread started");
+                    long interval = self.sConfig.getAntiEntropyInterval();
+                    long wait = interval;
+                    int attempts = 0;
+                    while (!Utills.checkInterrupt()) {
+                        try {
+                            Thread.sleep(wait);
+                            wait = interval;
+                            if (!(boolean) config.get("serverStarted")) {
+                                continue;
+                            }
+                            LearnerInterface reference = self.antiEntropyReference();
+                            if (reference == null) {
+                                continue;
+                            }
+                            int repaired = self.antiEntropy(reference);
+                            if (repaired > 0) {
+                                self.logWriter.logger("Anti-entropy repaired " + repaired + " buckets of the store at slot " + self.paxosLog.getAppliedIndex());
+                            } else if (repaired < 0 && ++attempts < self.sConfig.getRequestAttempts()) {
+                                // Applied indexes differed, try again soon while writes come in
+                                wait = Math.max(1, delay);
+                                continue;
+                            }
+                            attempts = 0;
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            self.loggerEx(e);
+                        }
+                    }
+                }
+            });
+            this.futureList.add(futureAntiEntropy);
+        }
+        if (this.lease != null) {
+            // Starting lease heartbeat thread
+            Future<?> futureHeartbeat = this.executor.submit(new Runnable() {
                 @Override
                 public void run() {
-                    self.logger("Election thread started");
-                    while ((boolean) config.get("serverStarted") && !Utills.checkInterrupt()) {
+                    self.logger("Heartbeat thread started");
+                    long interval = Math.max(1, self.sConfig.getLeaseDuration() / 3);
+                    while (!Utills.checkInterrupt()) {
                         try {
-                            // Check leader alive
-                            if (delay > 0) {
-                                Thread.sleep(delay);
+                            Thread.sleep(interval);
+                            if (!(boolean) config.get("serverStarted")) {
+                                continue;
                             }
-                            try {
-                                self.getLeaderAccept().getAcceptorId();
-                            } catch (Exception e) {
-                                self.handleElectLeader();
+                            if (self.leaderServerId == self.serverId) {
+                                self.renewLease();
                             }
                         } catch (InterruptedException e) {
-                            // Ignore
-                        }  catch (Exception e) {
+                            return;
+                        } catch (Exception e) {
                             self.loggerEx(e);
                         }
                     }
                 }
             });
-            this.futureList.add(futureLeaderThread);
+            this.futureList.add(futureHeartbeat);
         }
         this.config.put("serverStarted", true);
         this.logger("Server - " + this.serverId + " started");
@@ -202,17 +473,112 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
 //    }
 
     /**
-     * Checks the liveliness of the leader by invoking the getAcceptorId() method on the leader's AcceptorInterface.
+     * Checks the liveliness of the leader with the failure detector, this server never suspects itself.
      *
-     * @return true if the leader is alive, false otherwise
+     * @return true if there is a leader and it is not suspected, false otherwise
      */
     private boolean checkLeaderAlive () {
-        try {
-            this.getLeaderAccept().getAcceptorId();
-            return true;
-        } catch (Exception e) {
-            return false;
+        return this.getLeaderAccept() != null && !this.detector.isSuspected(this.leaderServerId);
+    }
+
+    /**
+     * Sends a heartbeat to every other node in the background, including suspected nodes so that
+     * they are noticed when they come back. A node whose previous heartbeat is still in flight is skipped.
+     */
+    private void sendHeartbeats() {
+        Map<Integer, AcceptorInterface> targets = new HashMap<Integer, AcceptorInterface>();
+        synchronized (this.membershipLock) {
+            targets.putAll(this.suspectedAcceptors);
+            for (int index = 0; index < this.acceptors.size(); index++) {
+                if (this.acceptors.get(index) != null) {
+                    targets.put(index, this.acceptors.get(index));
+                }
+            }
+        }
+        targets.remove(this.serverId);
+        for (Map.Entry<Integer, AcceptorInterface> target : targets.entrySet()) {
+            final int nodeId = target.getKey();
+            final AcceptorInterface acceptor = target.getValue();
+            this.detector.watch(nodeId);
+            if (!this.pinging.add(nodeId)) {
+                continue;
+            }
+            this.rpcExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        acceptor.ping(serverId);
+                    } catch (Exception e) {
+                        // The receiver notices the missing heartbeat
+                    } finally {
+                        pinging.remove(nodeId);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes a suspected node from the quorums and keeps its acceptor and learner, so that it is
+     * added back when its heartbeats resume. A suspected leader is replaced by an election.
+     *
+     * @param nodeId Suspected node.
+     * @param phi    Suspicion level of the node.
+     */
+    private void suspect(int nodeId, double phi) {
+        synchronized (this.membershipLock) {
+            if (nodeId >= this.acceptors.size()) {
+                return;
+            }
+            if (this.acceptors.get(nodeId) != null) {
+                this.suspectedAcceptors.put(nodeId, this.acceptors.get(nodeId));
+            }
+            if (this.learners.get(nodeId) != null) {
+                this.suspectedLearners.put(nodeId, this.learners.get(nodeId));
+            }
+            this.handleParticipantServerFail(nodeId);
+        }
+        this.logWriter.logger("Server " + nodeId + " suspected with phi " + String.format("%.1f", phi));
+        if (this.leaderBased && nodeId == this.leaderServerId) {
+            this.electLeaderAsync();
+        }
+    }
+
+    /**
+     * Adds a suspected node back to the quorums once it sends heartbeats again, unless it was
+     * replaced by a restarted instance in the meantime.
+     *
+     * @param nodeId Node that is alive again.
+     */
+    private void unsuspect(int nodeId) {
+        synchronized (this.membershipLock) {
+            AcceptorInterface acceptor = this.suspectedAcceptors.remove(nodeId);
+            LearnerInterface learner = this.suspectedLearners.remove(nodeId);
+            if (acceptor != null && this.acceptors.get(nodeId) == null) {
+                this.acceptors.set(nodeId, acceptor);
+            }
+            if (learner != null && this.learners.get(nodeId) == null) {
+                this.learners.set(nodeId, learner);
+            }
+        }
+        this.logWriter.logger("Server " + nodeId + " alive again");
+    }
+
+    /**
+     * Runs for leader in the background unless an election of this server is already running.
+     */
+    private void electLeaderAsync() {
+        if (this.electing.get()) {
+            return;
         }
+        final PaxosServer self = this;
+        Future<?> future = this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                self.handleElectLeader();
+            }
+        });
+        this.trackFuture(future);
     }
 
     /**
@@ -221,10 +587,11 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @param index The index of the AcceptorInterface to retrieve
      * @return The AcceptorInterface at the specified index
      */
-    private synchronized AcceptorInterface getIndexAccept (int index) {
+    private AcceptorInterface getIndexAccept (int index) {
         if (index == this.serverId) {
             return (AcceptorInterface) this;
-        } else {
+        }
+        synchronized (this.membershipLock) {
             return this.acceptors.get(index);
         }
     }
@@ -236,30 +603,65 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @param index The index of the LearnerInterface to retrieve
      * @return The LearnerInterface at the specified index
      */
-    private synchronized LearnerInterface getIndexLearn (int index) {
+    private LearnerInterface getIndexLearn (int index) {
         if (index == this.serverId) {
             return (LearnerInterface) this;
-        } else {
+        }
+        synchronized (this.membershipLock) {
             return this.learners.get(index);
         }
     }
 
+    /**
+     * Copies the acceptors under the membership lock, so the copy can be iterated while the
+     * failure detector changes the membership.
+     *
+     * @return Acceptors indexed by server id, null for servers that left.
+     */
+    private List<AcceptorInterface> acceptorsSnapshot() {
+        synchronized (this.membershipLock) {
+            return new ArrayList<AcceptorInterface>(this.acceptors);
+        }
+    }
+
+    /**
+     * Copies the learners under the membership lock, see {@link #acceptorsSnapshot()}.
+     *
+     * @return Learners indexed by server id, null for servers that left.
+     */
+    private List<LearnerInterface> learnersSnapshot() {
+        synchronized (this.membershipLock) {
+            return new ArrayList<LearnerInterface>(this.learners);
+        }
+    }
+
     /**
      * Sets the newly elected leader and handles the transition appropriately.
      *
      * @param leaderId The server ID of the newly elected leader
      */
-    private synchronized void setNewElectedLeader (int leaderId) {
-        this.leaderAccept = this.getIndexAccept(leaderId);
-        this.leaderLearn = this.getIndexLearn(leaderId);
-        this.handleParticipantServerFail(this.leaderServerId);
-        this.leaderServerId = leaderId;
+    private void setNewElectedLeader (int leaderId) {
+        synchronized (this.membershipLock) {
+            this.leaderAccept = this.getIndexAccept(leaderId);
+            this.leaderLearn = this.getIndexLearn(leaderId);
+            // The previous leader leaves the quorums once the failure detector suspects it
+            this.leaderServerId = leaderId;
+            // A new leader has to run phase 1 again before skipping it for later slots
+            this.leaderPrepared = false;
+        }
+        if (this.lease != null) {
+            this.lease.revoke();
+        }
     }
 
     /**
      * Handles the election of a new leader by initiating an election operation.
      */
-    private synchronized void handleElectLeader() {
+    private void handleElectLeader() {
+        if (!this.electing.compareAndSet(false, true)) {
+            // This server already runs for leader
+            return;
+        }
         // Reducing the number of competition for being leader
 //        int
 //        if () {
@@ -271,6 +673,8 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
                 this.proposeOperation(operation);
             } catch (RemoteException e) {
                 //Ignore You were not elected as leader
+            } finally {
+                this.electing.set(false);
             }
     }
 
@@ -279,10 +683,11 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      *
      * @param index Index of the failed server in the list of acceptors.
      */
-    private synchronized void handleParticipantServerFail (int index) {
-        this.acceptors.set(index, null);
-        this.learners.set(index, null);
-        this.numServers = (int) this.acceptors.stream().filter(e -> e != null).count();
+    private void handleParticipantServerFail (int index) {
+        synchronized (this.membershipLock) {
+            this.acceptors.set(index, null);
+            this.learners.set(index, null);
+        }
     }
 
     /**
@@ -294,14 +699,108 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      */
     public PaxosServer(ServerConfig sConfig, Object clusterSemaphore) throws IOException {
         super(sConfig);
-        this.numServers = sConfig.getNumServers();
         this.serverId = sConfig.getServerId();
         this.leaderBased = sConfig.isLeaderBased();
+        this.multiPaxos = sConfig.isMultiPaxos();
+        this.chosenNotify = sConfig.isChosenNotify();
         this.clusterSemaphores = clusterSemaphore;
         this.delay = sConfig.getDelay();
+        this.ballots = new BallotGenerator(this.serverId);
+        this.quorumCall = new QuorumCall(this.rpcExecutor, this.delay * sConfig.getRequestAttempts());
+        this.pipeline = new Semaphore(Math.max(1, sConfig.getPipelineWindow()));
+        for (int index = 0; index < KEY_STRIPES; index++) {
+            this.keyStripes[index] = new Object();
+        }
+        this.detector = new FailureDetector(Math.max(1, sConfig.getHeartbeatInterval()), sConfig.getSuspicionThreshold(), new FailureDetector.Listener() {
+            @Override
+            public void suspected(int nodeId, double phi) {
+                suspect(nodeId, phi);
+            }
+
+            @Override
+            public void alive(int nodeId) {
+                unsuspect(nodeId);
+            }
+        });
+        if (sConfig.getGroups() > 1) {
+            this.ranges = new HashRing(sConfig.getGroups());
+        }
+        if (this.multiPaxos && sConfig.isRotatingSlots()) {
+            // Every node commits in its own slots, there is no leader to forward writes to
+            this.rotation = new RotatingSlots(this.serverId, sConfig.getNumServers());
+            this.leaderBased = false;
+        }
+        if (this.multiPaxos && this.leaderBased && sConfig.getLeaseDuration() > 0) {
+            this.lease = new LeaderLease(sConfig.getLeaseDuration());
+        }
+        if (!this.leaderBased && sConfig.isLeaderlessCommit()) {
+            this.egalitarianLog = new EgalitarianLog(this.serverId, command -> {
+                try {
+                    this.applyOperation(command);
+                } catch (BusinessException e) {
+                    this.loggerEx(e);
+                }
+            });
+        }
+        if (sConfig.getBatchSize() > 1) {
+            this.batcher = new CommandBatcher(this::proposeCommand, sConfig.getBatchSize(), sConfig.getBatchDelay(), this.rpcExecutor, sConfig.getPipelineWindow(),
+                    this.delay * sConfig.getRequestAttempts());
+        }
+        File directory = null;
+        if (!Utills.isEmptyString(sConfig.getWalDirectory())) {
+            directory = new File(sConfig.getWalDirectory(), "node-" + this.serverId + (sConfig.getGroupId() > 0 ? "-group-" + sConfig.getGroupId() : ""));
+        }
+        if (sConfig.getSnapshotInterval() > 0 && this.egalitarianLog == null) {
+            this.snapshotter = new Snapshotter(this.store, directory, sConfig.getSnapshotInterval());
+        }
+        if (sConfig.getAntiEntropyInterval() > 0 && this.multiPaxos && this.egalitarianLog == null) {
+            // Stores are only comparable at the same applied index of the slot log
+            this.merkle = new MerkleTree();
+        }
+        if (directory != null) {
+            this.recover(directory, sConfig.getWalSegmentSize());
+        }
         this.startServer();
     }
 
+    /**
+     * Restores the latest snapshot and the slot log from this replica's write-ahead log, then rebuilds
+     * the store from the chosen values after the snapshot. Ballot rounds and own rotating slots that
+     * may have been used before the restart are never used again.
+     *
+     * @param directory   Directory of this replica's write-ahead log and snapshot.
+     * @param segmentSize Size of the write-ahead log segments.
+     * @throws IOException if the snapshot or the write-ahead log can not be read.
+     */
+    private void recover(File directory, long segmentSize) throws IOException {
+        this.wal = new WriteAheadLog(directory, segmentSize);
+        // The log before a snapshot may be gone even if snapshots are disabled now
+        Snapshotter.Snapshot snapshot = (this.snapshotter != null ? this.snapshotter : new Snapshotter(this.store, directory, 0)).load();
+        if (snapshot != null) {
+            this.store.putAll(snapshot.getData());
+            if (this.merkle != null) {
+                this.merkle.rebuild(this.store);
+            }
+            if (this.ranges != null && snapshot.getTokens() != null) {
+                this.ranges.restore(snapshot.getTokens());
+            }
+            this.paxosLog.restore(snapshot.getIndex(), snapshot.getLogStart());
+        }
+        this.paxosLog.recover(this.wal);
+        this.ballots.observe(Math.max(this.paxosLog.getRecoveredBallot(), BallotGenerator.pack(this.paxosLog.getReservedRound(), this.serverId)));
+        if (this.rotation != null && this.paxosLog.getReservedSlot() >= 0) {
+            this.rotation.restartAt(this.paxosLog.getReservedSlot());
+        }
+        this.replaying = true;
+        try {
+            this.applyChosen();
+        } catch (BusinessException e) {
+            throw new IOException(e);
+        } finally {
+            this.replaying = false;
+        }
+    }
+
     /**
      * Constructs a unique key for storage based on the authorization ID and key.
      *
@@ -372,25 +871,77 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @throws RemoteException If a remote communication error occurs
      */
     @Override
-    public synchronized void leaderUpdate (MethodType type, String key, Object value) throws RemoteException{
-        try {
-            this.updateStore(type, key, value);
-        } catch (Exception e) {
-            // Ignore
+    public void leaderUpdate (MethodType type, String key, Object value) throws RemoteException{
+        if (this.multiPaxos) {
+            // Deletes carry a marker value like in the classic path so learners can match the votes
+            Object proposedValue = (type == MethodType.DELETE) ? MethodType.DELETE.name() : value;
+            if (this.ranges == null || (type != MethodType.PUT && type != MethodType.DELETE)) {
+                this.submitCommand(new Operation(type, key, proposedValue, "internal"));
+                return;
+            }
+            this.rangeLock.readLock().lock();
+            try {
+                this.checkOwner(key);
+                this.submitCommand(new Operation(type, key, proposedValue, "internal"));
+            } finally {
+                this.rangeLock.readLock().unlock();
+            }
+            return;
         }
-        for (LearnerInterface learnerInterface: this.learners) {
+        synchronized (this.keyStripes[Math.floorMod(Objects.hashCode(key), KEY_STRIPES)]) {
             try {
-                learnerInterface.updateStore(type, key, value);
+                this.updateStore(type, key, value);
             } catch (Exception e) {
                 // Ignore
             }
+            for (LearnerInterface learnerInterface: this.learnersSnapshot()) {
+                try {
+                    learnerInterface.updateStore(type, key, value);
+                } catch (Exception e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Commits a client command through consensus. PUT and DELETE commands go through the batcher
+     * when batching is enabled, every other command is proposed on its own.
+     *
+     * @param operation Command to commit.
+     * @throws RemoteException if the command could not be committed.
+     */
+    private void submitCommand(Operation operation) throws RemoteException {
+        if (this.batcher != null && (operation.getType() == MethodType.PUT || operation.getType() == MethodType.DELETE)) {
+            this.batcher.submit(operation);
+        } else {
+            this.proposeCommand(operation);
+        }
+    }
+
+    /**
+     * Proposes a single command or a batch through Multi-Paxos or classic Paxos depending on the configuration.
+     *
+     * @param operation Command or batch to propose.
+     * @throws RemoteException if the proposal failed.
+     */
+    private void proposeCommand(Operation operation) throws RemoteException {
+        if (this.multiPaxos) {
+            this.multiPaxosPropose(operation);
+        } else if (this.egalitarianLog != null && (operation.getType() == MethodType.PUT
+                || operation.getType() == MethodType.DELETE || operation.getType() == MethodType.BATCH)) {
+            this.egalitarianPropose(operation);
+        } else {
+            this.proposeOperation(operation);
         }
     }
 
     @Override
-    public synchronized void addNewLearner(LearnerInterface learnerInterface) throws RemoteException {
-        this.learners.set(learnerInterface.getLearnerId(), learnerInterface);
-        this.numServers = (int) this.learners.stream().filter(e -> e != null).count();
+    public void addNewLearner(LearnerInterface learnerInterface) throws RemoteException {
+        int learnerId = learnerInterface.getLearnerId();
+        synchronized (this.membershipLock) {
+            this.learners.set(learnerId, learnerInterface);
+        }
     }
 
     /**
@@ -407,7 +958,7 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
         if (this.leaderBased) {
             this.leaderUpdateWrapper(MethodType.PUT, key, value);
         } else {
-            this.proposeOperation(new Operation(MethodType.PUT, key, value, authId));
+            this.submitCommand(new Operation(MethodType.PUT, key, value, authId));
         }
     }
 
@@ -422,61 +973,269 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
     @Override
     public Object getData(String key, String authId) throws RemoteException {
         this.authCheck(authId);
-        String storeKey = this.consStoreKeyRe(authId, key);
-        if (this.store.containsKey(storeKey)) {
-            return this.store.get(storeKey);
+        if (this.lease != null) {
+            if (this.leaderServerId != this.serverId) {
+                return this.followerRead(key, authId);
+            }
+            this.awaitLinearizableRead();
         }
-        return null;
+        return this.readLocal(key, authId);
     }
 
     /**
-     * Wrapper method for leader updates, ensuring the update is sent to the current leader.
-     * Retries the operation with a delay if the leader is not alive.
+     * Retrieves data for the given key from this replica if its state is at most maxStaleness
+     * milliseconds old. A follower knows it was up to date when the latest leader heartbeat arrived
+     * once it applied the commit index carried by the heartbeat. A lagging follower waits for its
+     * log within the staleness budget; if the bound still can not be met the read is served
+     * linearizably instead. Without leases there is no heartbeat, so this behaves like a normal read.
      *
-     * @param type  The type of update operation (e.g., ADD, REMOVE)
-     * @param key   The key associated with the update
-     * @param value The value to be updated
-     * @throws RemoteException If a remote communication error occurs
+     * @param key          Key to retrieve data for.
+     * @param authId       Authorization ID for the operation.
+     * @param maxStaleness Maximum age of the returned value in milliseconds.
+     * @return Retrieved data.
+     * @throws RemoteException if a remote error occurs.
      */
-    private void leaderUpdateWrapper (MethodType type, String key, Object value) throws RemoteException{
-        boolean continueLoop = true;
-        int counter = 0;
-        // Continue Trying after every delay amount if leader is not alive
-        while (continueLoop) {
-            if (counter > this.sConfig.getRequestAttempts()) {
-                throw new RemoteBusinessException("Update failed");
-            }
+    @Override
+    public Object getData(String key, String authId, long maxStaleness) throws RemoteException {
+        this.authCheck(authId);
+        if (this.lease == null || this.leaderServerId == this.serverId) {
+            return this.getData(key, authId);
+        }
+        long staleness = this.lease.staleness(this.paxosLog.getAppliedIndex());
+        if (staleness < 0 && maxStaleness > 0) {
             try {
-                counter++;
-                this.leaderLearn.leaderUpdate(type, key, value);
-                continueLoop = false;
-            } catch (Exception e) {
-                try {
-                    continueLoop = true;
-                    Thread.sleep(this.delay);
-                } catch (InterruptedException ex) {
-                    // Ignore
-                }
+                this.paxosLog.awaitApplied(this.lease.getLeaderCommitIndex(), maxStaleness);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteBusinessException("Interrupted while reading");
             }
+            staleness = this.lease.staleness(this.paxosLog.getAppliedIndex());
+        }
+        if (staleness >= 0 && staleness <= maxStaleness) {
+            return this.readLocal(key, authId);
         }
+        return this.followerRead(key, authId);
     }
 
     /**
-     * Proposes a DELETE operation to the Paxos algorithm.
+     * Reads a key from the local store.
      *
-     * @param key    Key for the operation.
+     * @param key    Key to read.
      * @param authId Authorization ID for the operation.
+     * @return Stored value.
      * @throws RemoteException if a remote error occurs.
      */
-    @Override
-    public void deleteData(String key, String authId) throws RemoteException {
-        this.authCheck(authId);
-        if (this.leaderBased) {
-            this.leaderUpdateWrapper(MethodType.DELETE, key, null);
-        } else {
-            this.proposeOperation(new Operation(MethodType.DELETE, key, "DELETE", authId));
+    private Object readLocal(String key, String authId) throws RemoteException {
+        String storeKey = this.consStoreKeyRe(authId, key);
+        if (this.ranges != null) {
+            this.checkOwner(storeKey);
         }
-    }
+        this.storeLock.readLock().lock();
+        try {
+            return this.store.get(storeKey);
+        } finally {
+            this.storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a key on the leader under its lease.
+     *
+     * @param key    Key to read.
+     * @param authId Authorization ID for the operation.
+     * @return Stored value.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if this server is not the leader.
+     */
+    @Override
+    public Object leaderRead(String key, String authId) throws RemoteException {
+        this.authCheck(authId);
+        this.awaitLinearizableRead();
+        return this.readLocal(key, authId);
+    }
+
+    /**
+     * Confirms this server is still the leader and returns its commit index. Under a valid lease
+     * no other leader can have chosen values, so every write completed before the call is at or
+     * below the highest slot this leader knows to be chosen. Without the lease the read is ordered
+     * through the log by a NOOP first.
+     *
+     * @return Highest slot known to be chosen.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if this server is not the leader.
+     */
+    @Override
+    public long readIndex() throws RemoteException {
+        if (this.lease == null || this.leaderServerId != this.serverId) {
+            throw new RemoteBusinessException("Server " + this.serverId + " is not the leader");
+        }
+        if (!this.lease.isHeld() || !this.leaderPrepared) {
+            this.proposeCommand(new Operation(MethodType.NOOP, MethodType.NOOP.name(), MethodType.NOOP.name(), "internal"));
+        }
+        return this.paxosLog.getChosenIndex();
+    }
+
+    /**
+     * Makes sure the leader's store reflects every write completed before the read by applying
+     * the log up to the read index.
+     *
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the read could not be ordered in time.
+     */
+    private void awaitLinearizableRead() throws RemoteException {
+        long readIndex = this.readIndex();
+        try {
+            if (!this.paxosLog.awaitApplied(readIndex, this.delay * this.sConfig.getRequestAttempts())) {
+                throw new RemoteBusinessException("Read timed out waiting for the log to be applied");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteBusinessException("Interrupted while reading");
+        }
+    }
+
+    /**
+     * Sends a heartbeat to every acceptor and renews the leader lease once a majority granted it.
+     *
+     * @throws RemoteBusinessException if the majority did not grant the lease.
+     */
+    private void renewLease() throws RemoteBusinessException {
+        long sentAt = System.nanoTime();
+        long commitIndex = this.paxosLog.getChosenIndex();
+        // An accept quorum intersects every prepare quorum, so no other node can be prepared during the lease
+        this.quorumCall.call(this.acceptorsSnapshot(), this.acceptQuorum(), acceptor -> {
+            acceptor.heartbeat(this.serverId, commitIndex);
+            return true;
+        });
+        this.lease.renew(sentAt);
+    }
+
+    /**
+     * Grants the leader lease to the leader this server knows.
+     *
+     * @param leaderId    Server id of the leader.
+     * @param commitIndex Highest slot the leader knows to be chosen.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the sender is not the known leader or another lease is running.
+     */
+    @Override
+    public void heartbeat(int leaderId, long commitIndex) throws RemoteException {
+        if (this.lease == null || leaderId != this.leaderServerId || !this.lease.grant(leaderId, commitIndex)) {
+            throw new RemoteBusinessException("Lease not granted to server " + leaderId);
+        }
+    }
+
+    /**
+     * Records a heartbeat of another node for the failure detector.
+     *
+     * @param senderId Server id of the sending node.
+     * @throws RemoteException if a remote error occurs.
+     */
+    @Override
+    public void ping(int senderId) throws RemoteException {
+        this.detector.heartbeat(senderId);
+    }
+
+    /**
+     * Refuses prepare requests of other nodes while the lease granted to the leader is running.
+     *
+     * @param proposalId Ballot of the prepare request.
+     * @throws RemoteBusinessException if another node holds the lease.
+     */
+    private void checkLease(long proposalId) throws RemoteBusinessException {
+        if (this.lease != null && this.lease.blocks(BallotGenerator.nodeId(proposalId))) {
+            throw new RemoteBusinessException("Leader lease still running, prepare refused");
+        }
+    }
+
+    /**
+     * Linearizable read on a follower. The follower asks the leader for its read index, waits until
+     * its own log is applied up to that index and reads locally. If the local log does not catch up
+     * in time the read is served by the leader instead. Retries with a delay if the leader is not reachable.
+     *
+     * @param key    Key to read.
+     * @param authId Authorization ID for the operation.
+     * @return Stored value.
+     * @throws RemoteException If a remote communication error occurs
+     */
+    private Object followerRead(String key, String authId) throws RemoteException {
+        int counter = 0;
+        while (true) {
+            if (counter > this.sConfig.getRequestAttempts()) {
+                throw new RemoteBusinessException("Read failed");
+            }
+            counter++;
+            try {
+                long readIndex = this.leaderLearn.readIndex();
+                if (this.paxosLog.awaitApplied(readIndex, Math.max(1, this.delay * this.sConfig.getRequestAttempts()))) {
+                    return this.readLocal(key, authId);
+                }
+                return this.leaderLearn.leaderRead(key, authId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteBusinessException("Interrupted while reading");
+            } catch (Exception e) {
+                try {
+                    Thread.sleep(this.delay);
+                } catch (InterruptedException ex) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrapper method for leader updates, ensuring the update is sent to the current leader.
+     * Retries the operation with a delay if the leader is not alive.
+     *
+     * @param type  The type of update operation (e.g., ADD, REMOVE)
+     * @param key   The key associated with the update
+     * @param value The value to be updated
+     * @throws RemoteException If a remote communication error occurs
+     */
+    private void leaderUpdateWrapper (MethodType type, String key, Object value) throws RemoteException{
+        boolean continueLoop = true;
+        int counter = 0;
+        // Continue Trying after every delay amount if leader is not alive
+        while (continueLoop) {
+            if (counter > this.sConfig.getRequestAttempts()) {
+                throw new RemoteBusinessException("Update failed");
+            }
+            try {
+                counter++;
+                this.leaderLearn.leaderUpdate(type, key, value);
+                continueLoop = false;
+            } catch (Exception e) {
+                RedirectException redirect = RedirectException.find(e);
+                if (redirect != null) {
+                    throw redirect;
+                }
+                try {
+                    continueLoop = true;
+                    Thread.sleep(this.delay);
+                } catch (InterruptedException ex) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Proposes a DELETE operation to the Paxos algorithm.
+     *
+     * @param key    Key for the operation.
+     * @param authId Authorization ID for the operation.
+     * @throws RemoteException if a remote error occurs.
+     */
+    @Override
+    public void deleteData(String key, String authId) throws RemoteException {
+        this.authCheck(authId);
+        if (this.leaderBased) {
+            this.leaderUpdateWrapper(MethodType.DELETE, key, null);
+        } else {
+            this.submitCommand(new Operation(MethodType.DELETE, key, "DELETE", authId));
+        }
+    }
 
     /**
      * Stops the Paxos server, notifying other servers if necessary.
@@ -515,7 +1274,7 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
         switch (type) {
             case PUT -> this.store.put(key, value);
             case DELETE -> this.store.remove(key);
-            case LOG -> this.logWriter.logger(value + " -> Current Store:- " + this.store.toString() + " ; Leader server Id:- " + this.leaderServerId + " ; Server view of connections :- " + this.acceptors + " ; Timestamp:- " + System.currentTimeMillis());
+            case LOG -> this.logWriter.logger(value + " -> Current Store:- " + this.store.toString() + " ; Leader server Id:- " + this.leaderServerId + " ; Server view of connections :- " + this.acceptorsSnapshot() + " ; Timestamp:- " + System.currentTimeMillis());
         }
     }
 
@@ -529,6 +1288,9 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
     public void initiateGlobalState(String name) throws RemoteException {
         if (this.leaderBased) {
             this.leaderUpdateWrapper(MethodType.LOG, "logGlobalState", name);
+        } else if (this.rotation != null) {
+            // Skipped slots are chosen without acceptors, so only their owner may propose in its slots
+            this.proposeCommand(new Operation(MethodType.LOG, "logGlobalState", name, "internal"));
         } else {
             Operation logOperation = new Operation(MethodType.LOG, "logGlobalState", name, "internal");
             this.proposeOperation(logOperation);
@@ -542,7 +1304,7 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @throws RemoteException If a remote communication error occurs
      */
     @Override
-    public synchronized void askToStopASpecificServer(int index) throws RemoteException {
+    public void askToStopASpecificServer(int index) throws RemoteException {
         if (index == this.serverId) {
             this.stopServerAsync(false);
         } else {
@@ -564,28 +1326,45 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
     }
 
     @Override
-    public synchronized void addNewAcceptor(AcceptorInterface acceptorInterface) throws RemoteException {
-        this.acceptors.set(acceptorInterface.getAcceptorId(), acceptorInterface);
-        this.numServers = (int) this.acceptors.stream().filter(e -> e != null).count();
+    public void addNewAcceptor(AcceptorInterface acceptorInterface) throws RemoteException {
+        int acceptorId = acceptorInterface.getAcceptorId();
+        synchronized (this.membershipLock) {
+            this.acceptors.set(acceptorId, acceptorInterface);
+        }
     }
 
     @Override
-    public synchronized void addNewNode(AcceptorInterface acceptorInterface, LearnerInterface learnerInterface) throws RemoteException {
-        this.acceptors.set(acceptorInterface.getAcceptorId(), acceptorInterface);
-        this.learners.set(learnerInterface.getLearnerId(), learnerInterface);
-        this.numServers = (int) this.acceptors.stream().filter(e -> e != null).count();
+    public void addNewNode(AcceptorInterface acceptorInterface, LearnerInterface learnerInterface) throws RemoteException {
+        int acceptorId = acceptorInterface.getAcceptorId();
+        int learnerId = learnerInterface.getLearnerId();
+        synchronized (this.membershipLock) {
+            this.acceptors.set(acceptorId, acceptorInterface);
+            this.learners.set(learnerId, learnerInterface);
+        }
     }
 
     /**
-     * Generates a unique proposal ID.
+     * Generates a unique proposal ID. Proposal IDs are ballots of a round counter and the server id,
+     * they never repeat and are higher than every ballot this server has seen.
      *
      * @return Unique proposal ID.
+     * @throws RemoteBusinessException if the round could not be reserved in the write-ahead log.
+     */
+    private long generateProposalId() throws RemoteBusinessException {
+        long ballot = this.ballots.next();
+        this.paxosLog.reserveRound(BallotGenerator.round(ballot));
+        return ballot;
+    }
+
+    /**
+     * Moves the ballot generator past the ballot an acceptor promised when it rejected a request.
+     *
+     * @param e Failure of a prepare or accept quorum.
      */
-    private long generateProposalId() {
-        // Placeholder code to generate a unique proposal ID
-        long currentTime = System.currentTimeMillis();
-        currentTime = Long.valueOf(String.valueOf(currentTime) + this.serverId);
-        return currentTime;
+    private void observeRejection(RemoteBusinessException e) {
+        if (e instanceof PaxosRejectException) {
+            this.ballots.observe(((PaxosRejectException) e).getPromisedBallot());
+        }
     }
 
     /**
@@ -597,42 +1376,43 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @throws RemoteBusinessException if the proposal is rejected.
      */
     @Override
-    public synchronized void propose(long proposalId, Object proposalValue) throws RemoteException {
-        int serverSize = this.numServers;
-        int threshold = (int) (serverSize / 2);
-        // for self server handling
-        List<List<Object>> results = new LinkedList<List<Object>>();
-        List<Object> result = null;
-        for (AcceptorInterface acceptorInterface: this.acceptors) {
-            try {
-                result = acceptorInterface.prepareWrapper(proposalId, proposalValue);
-                results.add(result);
-            } catch (Exception e) {
-                // Ignore If there is exception
-            }
-        }
-        // Checking majority
-        if (results.size() > threshold) {
-            // Checking promise results
-            Operation paramOps = (Operation) proposalValue;
-            long highestProposalId = proposalId;
-            for (List<Object> list : results) {
-                if (list.size() == 3) {
-                    long paramProposalId = (long)list.get(0);
-                    long acceptedProposalId = (long)list.get(1);
-                    Operation acceptedOperation = (Operation) list.get(2);
-                    if (acceptedProposalId > highestProposalId) {
-                        highestProposalId = acceptedProposalId;
-                        paramOps.setValue(acceptedOperation.getValue());
-                    }
+    public void propose(long proposalId, Object proposalValue) throws RemoteException {
+        this.prepareSlot(proposalId, (Operation) proposalValue);
+    }
+
+    /**
+     * Runs the prepare phase for the slot of the given operation.
+     *
+     * @param proposalId Proposal ID for the operation.
+     * @param operation  Operation carrying the slot to prepare.
+     * @return The operation to send in the accept phase. This is the value accepted with the highest
+     * proposal ID by the promising acceptors, or the given operation if none of them accepted anything.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the majority did not promise.
+     */
+    private Operation prepareSlot(long proposalId, Operation operation) throws RemoteException {
+        List<List<Object>> results;
+        try {
+            // Returns as soon as a majority promised
+            results = this.quorumCall.call(this.acceptorsSnapshot(), this.prepareQuorum(), acceptor -> acceptor.prepareWrapper(proposalId, operation));
+        } catch (RemoteBusinessException e) {
+            this.observeRejection(e);
+            throw new RemoteBusinessException("Restart prepare majority did not agree");
+        }
+        // Checking promise results
+        Operation value = operation;
+        long highestProposalId = -1;
+        for (List<Object> list : results) {
+            if (list.size() == 3) {
+                long acceptedProposalId = (long)list.get(1);
+                Operation acceptedOperation = (Operation) list.get(2);
+                if (acceptedProposalId > highestProposalId) {
+                    highestProposalId = acceptedProposalId;
+                    value = acceptedOperation;
                 }
             }
-        } else {
-            throw new RemoteBusinessException("Restart prepare majority did not agree");
         }
-    }
-    private String consAcceptedKkeys (Operation operation) {
-        return operation.getKey();
+        return value;
     }
 
     /**
@@ -646,15 +1426,11 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      */
     @Override
     public List<Object> prepareWrapper (long proposalId, Object proposalValue) throws RemoteException {
-        if (proposalId > this.lastPreparedProposalId) {
-            return this.prepare(proposalId, proposalValue);
-        } else {
-            throw new RemoteBusinessException("Lower Priority Proposed, Restart Transaction");
-        }
+        return this.prepare(proposalId, proposalValue);
     }
 
     /**
-     * Prepares for a proposal in the Paxos algorithm.
+     * Prepares for a proposal in the Paxos algorithm. The promise only covers the slot of the proposed operation.
      *
      * @param proposalId    Proposal ID for the operation.
      * @param proposalValue Proposal value to be prepared.
@@ -662,14 +1438,16 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
      * @throws RemoteException          if a remote error occurs.
      * @throws RemoteBusinessException if the proposal is rejected.
      */
-    private synchronized List<Object> prepare(long proposalId, Object proposalValue) throws RemoteException {
-        this.lastPreparedProposalId = proposalId;
+    private List<Object> prepare(long proposalId, Object proposalValue) throws RemoteException {
+        Operation operation = (Operation) proposalValue;
+        this.checkLease(proposalId);
+        Operation acceptedValue = this.paxosLog.promise(operation.getSlot(), proposalId);
+        // Proposals of this server have to outrank the ballot just promised
+        this.ballots.observe(proposalId);
         List<Object> result = new LinkedList<Object>();
         result.add(proposalId);
-        // Checking if this acceptor has accepted a value for same key previously
-        Operation operation = (Operation) proposalValue;
-        if (this.acceptedPaxosKeys.containsKey(this.consAcceptedKkeys(operation))) {
-            Operation acceptedValue = this.acceptedPaxosKeys.get(this.consAcceptedKkeys(operation));
+        // Checking if this acceptor has accepted a value for same slot previously
+        if (acceptedValue != null) {
             result.add(acceptedValue.getProposalId());
             result.add(acceptedValue);
         }
@@ -678,182 +1456,1472 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
 
     /**
      * Proposes an operation using the Paxos algorithm, including the prepare and accept phases.
+     * The operation is proposed for the first slot this replica has not seen chosen. If that slot
+     * already holds an accepted value, the value is completed first and the operation moves on to the next slot.
+     * A failed attempt may have left the operation accepted by some acceptors, so it is retried in
+     * the same slot after a random back-off until the slot is decided; moving on earlier could get
+     * the operation chosen twice.
      *
      * @param operation Operation to be proposed.
      * @throws RemoteException          if a remote error occurs.
      * @throws RemoteBusinessException if the proposal is rejected.
      */
     private void proposeOperation(Operation operation) throws RemoteException {
-        long proposalId;
-        boolean proposeSuccess = false;
-        int serverSize = this.numServers;
-        int threshold = (int) (serverSize / 2);
-
-        // TODO propose retry attempt implementation
-//        while (!proposeSuccess && !Utills.checkInterrupt()) {
-        proposalId = this.generateProposalId();
+        int counter = 0;
+        // Concurrent proposals of this node claim different slots instead of competing for one
+        long slot = this.paxosLog.claimFirstUnchosenSlot();
         try {
-            operation.setProposalId(proposalId);
-            this.propose(proposalId, operation);
-            proposeSuccess = true;
-        } catch (Exception e) {
-            // Ignore
-        }
-//        }
-
-        // Accept phase
-        if (proposeSuccess) {
-            List<List<Object>> results = new LinkedList<List<Object>>();
-            List<Object> result = null;
-            // Call all acceptors
-            for (AcceptorInterface acceptorInterface: this.acceptors) {
-                try {
-                    result = acceptorInterface.acceptWrapper(proposalId, operation);
-                    results.add(result);
-                } catch (Exception e) {
-                    // Ignore if any acceptor fails
+            while (true) {
+                Operation value;
+                if (this.paxosLog.isChosen(slot)) {
+                    // Decided by another proposer, possibly with this operation after a failed attempt
+                    List<Operation> chosen = this.paxosLog.chosenFrom(slot, 1);
+                    if (chosen.isEmpty()) {
+                        throw new RemoteBusinessException("Slot " + slot + " was compacted before the outcome of the proposal was known");
+                    }
+                    value = chosen.get(0);
+                } else {
+                    long proposalId = this.generateProposalId();
+                    try {
+                        value = this.prepareSlot(proposalId, this.slotCopy(operation, slot, proposalId));
+                        value = this.slotCopy(value, slot, proposalId);
+                        this.acceptSlot(value);
+                    } catch (RemoteBusinessException e) {
+                        counter++;
+                        if (counter > this.sConfig.getRequestAttempts()) {
+                            // Notify user about transaction failure and user will try again with updated values
+                            throw new RemoteBusinessException("transaction failed");
+                        }
+                        this.backOff(counter);
+                        continue;
+                    }
                 }
+                if (value.getType() == operation.getType() && value.equals(operation)) {
+                    return;
+                }
+                if (operation.getType() == MethodType.ELECT && value.getType() == MethodType.ELECT) {
+                    // Another node won this election
+                    return;
+                }
+                // The slot holds another value, the operation was not chosen in it
+                this.paxosLog.release(slot);
+                slot = this.paxosLog.claimFirstUnchosenSlot();
             }
-            if (results.size() > threshold) {
-                Operation consensusValue = (Operation) results.get(0).get(1);
-                operation.setValue(consensusValue.getValue());
-            } else {
-                // Notify user about transaction failure and user will try again with updated values
-                throw new RemoteBusinessException("transaction failed");
-            }
+        } finally {
+            this.paxosLog.release(slot);
         }
+    }
 
+    /**
+     * Waits a random time before a proposal is retried, so that proposers competing for the same
+     * slot do not keep outbidding each other. The bound doubles with every attempt up to the delay.
+     *
+     * @param attempt Number of failed attempts so far.
+     * @throws RemoteBusinessException if the thread is interrupted.
+     */
+    private void backOff(int attempt) throws RemoteBusinessException {
+        long bound = Math.min(Math.max(this.delay, 1), 10L << Math.min(attempt, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteBusinessException("Interrupted while proposing");
+        }
     }
 
     /**
-     * Asynchronously calls the learn method on all learners for a given proposal ID and proposed value.
+     * Runs phase 1 once for every slot from the first unapplied slot onwards, so that this leader
+     * can skip the prepare phase for later commands. Values already accepted by a majority member
+     * in those slots are proposed again and holes are filled with NOOP operations.
      *
-     * @param proposalId    Proposal ID associated with the value.
-     * @param proposedValue Value proposed to be learned.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the majority did not promise.
      */
-    private void callLearners (long proposalId, Operation proposedValue) {
-        // executing learning on other servers asynchronously to avoid deadlock
-        final List<LearnerInterface> learners = this.learners;
-        final PaxosServer self = this;
-        // Submit a task to the learnExecutor to call the learn method on all learners
-        Future<?> future = this.learnExecutor.submit(new Runnable() {
-            @Override
-            public void run() {
-                for (LearnerInterface learnerInterface: learners) {
-                    try {
-                        // Call the learn method on all other learners
-                        learnerInterface.learn(proposalId, proposedValue);
-                    } catch (Exception e) {
-//                        self.loggerEx(e);
+    private void prepareLeadership() throws RemoteException {
+        synchronized (this.leadershipLock) {
+            if (this.leaderPrepared) {
+                return;
+            }
+            long ballot = this.generateProposalId();
+            long fromSlot = this.paxosLog.getAppliedIndex() + 1;
+            List<List<Operation>> promises;
+            try {
+                promises = this.quorumCall.call(this.acceptorsSnapshot(), this.prepareQuorum(), acceptor -> acceptor.prepareRange(ballot, fromSlot));
+            } catch (RemoteBusinessException e) {
+                this.observeRejection(e);
+                throw new RemoteBusinessException("Restart prepare majority did not agree");
+            }
+            TreeMap<Long, Operation> recovered = new TreeMap<Long, Operation>();
+            for (List<Operation> acceptedList : promises) {
+                for (Operation accepted : acceptedList) {
+                    Operation previous = recovered.get(accepted.getSlot());
+                    if (previous == null || accepted.getProposalId() > previous.getProposalId()) {
+                        recovered.put(accepted.getSlot(), accepted);
                     }
                 }
             }
-        });
-        // Add the future to the list of futures for tracking
-        this.futureList.add(future);
+            this.leaderBallot = ballot;
+            this.leaderPrepared = true;
+            if (recovered.isEmpty()) {
+                return;
+            }
+            long lastSlot = recovered.lastKey();
+            this.paxosLog.reserveUpTo(lastSlot);
+            // Finish slots that a previous leader may have left partially accepted
+            for (long slot = fromSlot; slot <= lastSlot; slot++) {
+                Operation previous = recovered.get(slot);
+                if (previous == null) {
+                    previous = new Operation(MethodType.NOOP, MethodType.NOOP.name(), MethodType.NOOP.name(), "internal");
+                }
+                this.acceptSlot(this.slotCopy(previous, slot, ballot));
+            }
+        }
     }
 
     /**
-     * Accepts a proposal in the Paxos algorithm.
+     * Copies an operation into a given slot and ballot. Every attempt gets its own copy because
+     * the local acceptor keeps a reference to the operation it accepted.
      *
-     * @param proposalId    Proposal ID for the operation.
-     * @param proposalValue Proposal value to be accepted.
-     * @return List of accept results.
-     * @throws RemoteException          if a remote error occurs.
-     * @throws RemoteBusinessException if the proposal is rejected.
+     * @param operation  Operation to copy.
+     * @param slot       Slot of the copy.
+     * @param proposalId Ballot of the copy.
+     * @return Copy of the operation bound to the slot and ballot.
      */
-    private synchronized List<Object> accept(long proposalId, Object proposalValue) throws RemoteException {
-        this.generateRandomExceptions();
-        final Operation temp = (Operation) proposalValue;
-        this.acceptedPaxosKeys.put(this.consAcceptedKkeys(temp), temp);
-        List<Object> result = new LinkedList<Object>();
-        result.add(proposalId);
-        result.add(temp);
-        this.callLearners(proposalId, temp);
-        return result;
+    private Operation slotCopy(Operation operation, long slot, long proposalId) {
+        Operation copy = new Operation(operation.getType(), operation.getKey(), operation.getValue(), operation.getAuthId());
+        copy.setSlot(slot);
+        copy.setProposalId(proposalId);
+        return copy;
     }
 
     /**
-     * Wrapper method for the accept phase, ensuring the proposal has an equal or higher priority before proceeding.
+     * Sends the accept phase of an already prepared slot to all acceptors.
      *
-     * @param proposalId     The proposal ID for the accept phase
-     * @param proposalValue  The value associated with the proposal
-     * @return A list of objects representing the result of the accept phase
-     * @throws RemoteException       If a remote communication error occurs
-     * @throws RemoteBusinessException If a lower-priority proposal ID is detected in the Accept-Request phase
+     * @param operation Operation carrying its slot and the leader ballot.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the majority did not accept.
      */
-    @Override
-    public List<Object> acceptWrapper (long proposalId, Object proposalValue) throws RemoteException {
-        if (proposalId >= this.lastPreparedProposalId) {
-            return this.accept(proposalId, proposalValue);
-        } else {
-            throw new RemoteBusinessException("Proposal ID lower in Accept-Request phase");
+    private void acceptSlot(Operation operation) throws RemoteException {
+        try {
+            // Returns as soon as a majority accepted
+            if (this.sConfig.isThriftyAccept()) {
+                this.quorumCall.callThrifty(this.acceptorsSnapshot(), this.acceptQuorum(), acceptor -> acceptor.acceptWrapper(operation.getProposalId(), operation));
+            } else {
+                this.quorumCall.call(this.acceptorsSnapshot(), this.acceptQuorum(), acceptor -> acceptor.acceptWrapper(operation.getProposalId(), operation));
+            }
+        } catch (RemoteBusinessException e) {
+            this.observeRejection(e);
+            // Some other proposer holds a higher ballot, phase 1 has to run again
+            this.leaderPrepared = false;
+            if (this.lease != null) {
+                this.lease.revoke();
+            }
+            throw new RemoteBusinessException("transaction failed");
+        }
+        // A majority accepted, so the proposer already knows the value is chosen
+        this.learnChosen(operation);
+        if (this.chosenNotify) {
+            this.notifyChosen(operation);
         }
     }
 
     /**
-     * Resets the learner map for a given proposal ID and operation.
+     * Asynchronously tells every other learner that the operation was chosen. The first message
+     * only names the slot and ballot; the value is sent only to learners that did not accept it.
      *
-     * @param proposalId Proposal ID to reset.
-     * @param operation  Operation to reset.
+     * @param operation Chosen operation carrying its slot and ballot.
      */
-    private void reset(long proposalId, Operation operation) {
-        this.learnerMap.remove(operation);
+    private void notifyChosen(Operation operation) {
+        final List<LearnerInterface> learners = this.learnersSnapshot();
+        Future<?> future = this.rpcExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int index = 0; index < learners.size(); index++) {
+                    LearnerInterface learnerInterface = learners.get(index);
+                    if (index == serverId || learnerInterface == null) {
+                        continue;
+                    }
+                    try {
+                        if (!learnerInterface.chosen(operation.getSlot(), operation.getProposalId(), null)) {
+                            learnerInterface.chosen(operation.getSlot(), operation.getProposalId(), operation);
+                        }
+                    } catch (Exception e) {
+                        // The learner catches up once it is reachable again
+                    }
+                }
+            }
+        });
+        this.trackFuture(future);
     }
 
     /**
-     * Learns and processes the accepted value in the Paxos algorithm.
+     * Records a value known to be chosen and applies every slot that became applicable.
      *
-     * @param proposalId    Proposal ID for the accepted value.
-     * @param acceptedValue Accepted value to be learned.
-     * @throws RemoteException          if a remote error occurs.
-     * @throws RemoteBusinessException if learning fails.
+     * @param operation Chosen operation carrying its slot.
+     * @throws RemoteBusinessException if applying the operation fails.
      */
-    @Override
-    public synchronized void learn(long proposalId, Object acceptedValue) throws RemoteException {
-        Operation operation = (Operation) acceptedValue;
-//        if (this.acceptedPaxosKeys.containsKey(this.consAcceptedKkeys(operation))) {
-            if (!this.learnerMap.containsKey(operation)) {
-                this.learnerMap.put(operation, 0);
-            }
-            int count = this.learnerMap.get(operation) + 1;
-            this.learnerMap.put(operation, count);
-            int threshold = (int)this.numServers / 2;
-            if (count > threshold) {
-                try {
-                    this.applyOperation(operation);
-                    this.reset(proposalId, operation);
-                } catch (BusinessException e) {
-                    throw new RemoteBusinessException(e.getMessage());
-                }
+    private void learnChosen(Operation operation) throws RemoteBusinessException {
+        try {
+            this.paxosLog.choose(operation);
+            if (this.rotation != null) {
+                this.skipOwnSlots(operation.getSlot());
             }
-//        } else {
-//            throw new RemoteBusinessException("Transaction not accepted");
-//        }
+            this.applyChosen();
+        } catch (BusinessException e) {
+            throw new RemoteBusinessException(e.getMessage());
+        }
+        if (operation.getSlot() > this.paxosLog.getAppliedIndex()) {
+            // A slot before this one is missing
+            synchronized (this.gapSignal) {
+                this.gapSignal.notifyAll();
+            }
+        }
     }
 
     /**
-     * Applies the proposed operation to the server's state.
+     * Commits a command through the leaderless path from this replica and waits until it is executed locally.
+     *
+     * @param operation Command to commit.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the command could not be committed or was not executed in time.
+     */
+    private void egalitarianPropose(Operation operation) throws RemoteException {
+        EgalitarianInstance proposal = this.egalitarianLog.propose(operation);
+        this.broadcastCommit(this.orderInstance(proposal, true));
+        try {
+            if (!this.egalitarianLog.awaitExecuted(proposal.getId(), this.delay * this.sConfig.getRequestAttempts())) {
+                throw new RemoteBusinessException("Instance " + proposal.getId() + " was committed but not executed in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteBusinessException("Interrupted while proposing");
+        }
+    }
+
+    /**
+     * Decides the attributes of a leaderless instance. Phase 1 collects the conflicts every acceptor
+     * knows. If every configured node answered with the proposer's own attributes the instance is
+     * committed right away (fast path), otherwise the merged attributes are accepted by a majority first.
+     * The fast path needs every node, so a recovering replica can always tell whether it was taken.
+     *
+     * @param proposal     Instance with the command, the attributes and the ballot to use.
+     * @param fastPathOpen Whether the fast path may be taken, which is only the case for the first ballot.
+     * @return The instance with the decided attributes.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if a quorum did not answer.
+     */
+    private EgalitarianInstance orderInstance(EgalitarianInstance proposal, boolean fastPathOpen) throws RemoteException {
+        List<EgalitarianInstance> replies;
+        try {
+            replies = this.quorumCall.callAll(this.acceptorsSnapshot(), this.majority(), acceptor -> acceptor.preAccept(proposal));
+        } catch (RemoteBusinessException e) {
+            this.observeRejection(e);
+            throw new RemoteBusinessException("transaction failed");
+        }
+        EgalitarianInstance decided = proposal.copy();
+        boolean fastPath = fastPathOpen && replies.size() >= this.sConfig.getNumServers();
+        for (EgalitarianInstance reply : replies) {
+            if (!reply.sameAttributes(proposal)) {
+                fastPath = false;
+            }
+            decided.getDeps().addAll(reply.getDeps());
+            decided.setSeq(Math.max(decided.getSeq(), reply.getSeq()));
+        }
+        if (!fastPath) {
+            try {
+                this.quorumCall.call(this.acceptorsSnapshot(), this.majority(), acceptor -> {
+                    acceptor.acceptInstance(decided);
+                    return true;
+                });
+            } catch (RemoteBusinessException e) {
+                this.observeRejection(e);
+                throw new RemoteBusinessException("transaction failed");
+            }
+        }
+        return decided;
+    }
+
+    /**
+     * Commits a leaderless instance locally and asynchronously on every other replica.
+     *
+     * @param committed Instance with its decided attributes.
+     */
+    private void broadcastCommit(EgalitarianInstance committed) {
+        this.egalitarianLog.commit(committed);
+        final List<AcceptorInterface> acceptors = this.acceptorsSnapshot();
+        Future<?> future = this.rpcExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (int index = 0; index < acceptors.size(); index++) {
+                    AcceptorInterface acceptorInterface = acceptors.get(index);
+                    if (index == serverId || acceptorInterface == null) {
+                        continue;
+                    }
+                    try {
+                        acceptorInterface.commitInstance(committed);
+                    } catch (Exception e) {
+                        // The replica recovers the instance if it blocks its execution
+                    }
+                }
+            }
+        });
+        this.trackFuture(future);
+    }
+
+    /**
+     * Recovers a leaderless instance that a committed instance depends on but that was not committed
+     * in time, usually because its proposer failed. A committed or accepted value found by the
+     * explicit prepare is finished as it is. Attributes pre-accepted identically by every replica
+     * that answered may have been committed on the fast path and are kept. Otherwise phase 1 runs
+     * again, with a NOOP if no replica knows the command.
+     *
+     * @param instanceId Instance to recover.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the recovery did not reach a majority.
+     */
+    private void recoverInstance(long instanceId) throws RemoteException {
+        long ballot = this.generateProposalId();
+        List<EgalitarianInstance> replies;
+        try {
+            replies = this.quorumCall.call(this.acceptorsSnapshot(), this.majority(), acceptor -> acceptor.prepareInstance(instanceId, ballot));
+        } catch (RemoteBusinessException e) {
+            this.observeRejection(e);
+            throw new RemoteBusinessException("Restart prepare majority did not agree");
+        }
+        EgalitarianInstance accepted = null;
+        EgalitarianInstance preAccepted = null;
+        boolean identical = true;
+        for (EgalitarianInstance reply : replies) {
+            if (reply.isCommitted()) {
+                this.broadcastCommit(reply);
+                return;
+            }
+            if (reply.getStatus() == InstanceStatus.ACCEPTED) {
+                if (accepted == null || reply.getAcceptedBallot() > accepted.getAcceptedBallot()) {
+                    accepted = reply;
+                }
+            } else if (reply.getStatus() == InstanceStatus.PREACCEPTED) {
+                if (preAccepted != null && !preAccepted.sameAttributes(reply)) {
+                    identical = false;
+                }
+                preAccepted = preAccepted == null ? reply : preAccepted;
+            } else {
+                identical = false;
+            }
+        }
+        EgalitarianInstance decided;
+        if (accepted != null || (preAccepted != null && identical)) {
+            decided = (accepted != null ? accepted : preAccepted).copy();
+            decided.setBallot(ballot);
+            this.quorumCall.call(this.acceptorsSnapshot(), this.majority(), acceptor -> {
+                acceptor.acceptInstance(decided);
+                return true;
+            });
+        } else {
+            EgalitarianInstance proposal = new EgalitarianInstance(instanceId);
+            proposal.setCommand(preAccepted != null ? preAccepted.getCommand()
+                    : new Operation(MethodType.NOOP, MethodType.NOOP.name(), MethodType.NOOP.name(), "internal"));
+            proposal.setBallot(ballot);
+            decided = this.orderInstance(proposal, false);
+        }
+        this.broadcastCommit(decided);
+    }
+
+    /**
+     * Leaderless phase 1 on this acceptor.
+     *
+     * @param proposal Instance with the command and the attributes of the proposer.
+     * @return Instance with this acceptor's attributes.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if leaderless commit is disabled or the ballot is too low.
+     */
+    @Override
+    public EgalitarianInstance preAccept(EgalitarianInstance proposal) throws RemoteException {
+        return this.egalitarianLog().preAccept(proposal);
+    }
+
+    /**
+     * Leaderless phase 2 on this acceptor.
+     *
+     * @param proposal Instance with the attributes to accept.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if leaderless commit is disabled or the ballot is too low.
+     */
+    @Override
+    public void acceptInstance(EgalitarianInstance proposal) throws RemoteException {
+        this.egalitarianLog().accept(proposal);
+    }
+
+    /**
+     * Records a committed leaderless instance and executes what became executable.
+     *
+     * @param committed Committed instance.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if leaderless commit is disabled.
+     */
+    @Override
+    public void commitInstance(EgalitarianInstance committed) throws RemoteException {
+        this.egalitarianLog().commit(committed);
+    }
+
+    /**
+     * Explicit prepare of a leaderless instance for recovery.
+     *
+     * @param instanceId Instance to recover.
+     * @param ballot     Ballot of the recovering replica.
+     * @return Instance as known to this acceptor.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if leaderless commit is disabled or the ballot is too low.
+     */
+    @Override
+    public EgalitarianInstance prepareInstance(long instanceId, long ballot) throws RemoteException {
+        EgalitarianInstance instance = this.egalitarianLog().prepare(instanceId, ballot);
+        this.ballots.observe(ballot);
+        return instance;
+    }
+
+    /**
+     * Reports how far this replica executed the leaderless instances of every replica.
+     *
+     * @return Per replica, the instance number up to which every instance of it was executed.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if leaderless commit is disabled.
+     */
+    @Override
+    public Map<Integer, Long> executedInstances() throws RemoteException {
+        return this.egalitarianLog().getExecutedThrough();
+    }
+
+    /**
+     * Drops the leaderless instances that every configured replica executed. A replica that does
+     * not answer holds the truncation back, since it may still have to recover those instances.
+     */
+    private void truncateInstances() {
+        List<AcceptorInterface> acceptors = this.acceptorsSnapshot();
+        List<Map<Integer, Long>> reports = new ArrayList<Map<Integer, Long>>();
+        for (int index = 0; index < this.sConfig.getNumServers(); index++) {
+            AcceptorInterface acceptor = index == this.serverId ? this : (index < acceptors.size() ? acceptors.get(index) : null);
+            if (acceptor == null) {
+                return;
+            }
+            try {
+                reports.add(acceptor.executedInstances());
+            } catch (Exception e) {
+                return;
+            }
+        }
+        Map<Integer, Long> executedEverywhere = new HashMap<Integer, Long>(reports.get(0));
+        for (Map<Integer, Long> report : reports) {
+            executedEverywhere.replaceAll((owner, through) -> Math.min(through, report.getOrDefault(owner, -1L)));
+        }
+        this.egalitarianLog.truncate(executedEverywhere);
+    }
+
+    private EgalitarianLog egalitarianLog() throws RemoteBusinessException {
+        if (this.egalitarianLog == null) {
+            throw new RemoteBusinessException("Leaderless commit is not enabled on server " + this.serverId);
+        }
+        return this.egalitarianLog;
+    }
+
+    /**
+     * Checks that this group owns a key according to its log.
+     *
+     * @param key Store key.
+     * @throws RedirectException if another group owns the key.
+     */
+    private void checkOwner(String key) throws RedirectException {
+        int owner = this.ranges.groupFor(key);
+        if (owner != this.sConfig.getGroupId()) {
+            throw new RedirectException("Key " + key + " is owned by group " + owner, owner, -1);
+        }
+    }
+
+    /**
+     * Records a write to a key of the range that is being copied to another group.
+     *
+     * @param storeKey Written key.
+     */
+    private void trackChange(String storeKey) {
+        long[] range = this.migratingRange;
+        Set<String> changed = this.migrationChanged;
+        if (range != null && changed != null && HashRing.contains(range[0], range[1], storeKey)) {
+            changed.add(storeKey);
+        }
+    }
+
+    /**
+     * Checks that this replica can move a range of its group away.
+     *
+     * @throws RemoteBusinessException if the group does not commit through a leader's log.
+     * @throws RedirectException       if another node leads the group.
+     */
+    void checkRangeMigration() throws RemoteBusinessException {
+        if (!this.multiPaxos || !this.leaderBased) {
+            throw new RemoteBusinessException("Range migration needs electLeader and multiPaxos");
+        }
+        if (this.leaderServerId != this.serverId) {
+            throw new RedirectException("Server " + this.leaderServerId + " leads group " + this.sConfig.getGroupId(),
+                    this.sConfig.getGroupId(), this.leaderServerId);
+        }
+    }
+
+    /**
+     * Starts recording the keys written in a range that is copied to another group.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @return Keys written since the call, filled while the range is applied.
+     * @throws RemoteBusinessException if a migration of this replica is already running.
+     */
+    Set<String> startMigration(long fromPosition, long toPosition) throws RemoteBusinessException {
+        synchronized (this.applyLock) {
+            if (this.migratingRange != null) {
+                throw new RemoteBusinessException("A range of group " + this.sConfig.getGroupId() + " is already moving");
+            }
+            this.migrationChanged = ConcurrentHashMap.newKeySet();
+            this.migratingRange = new long[]{fromPosition, toPosition};
+            return this.migrationChanged;
+        }
+    }
+
+    /**
+     * Stops recording written keys.
+     */
+    void stopMigration() {
+        synchronized (this.applyLock) {
+            this.migratingRange = null;
+            this.migrationChanged = null;
+        }
+    }
+
+    /**
+     * Copies the applied values of every key in a range.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @return PUT operations recreating the range.
+     */
+    List<Operation> rangeSnapshot(long fromPosition, long toPosition) {
+        List<Operation> snapshot = new ArrayList<Operation>();
+        this.storeLock.readLock().lock();
+        try {
+            for (Map.Entry<String, Object> entry : this.store.entrySet()) {
+                if (HashRing.contains(fromPosition, toPosition, entry.getKey())) {
+                    snapshot.add(new Operation(MethodType.PUT, entry.getKey(), entry.getValue(), "internal"));
+                }
+            }
+        } finally {
+            this.storeLock.readLock().unlock();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Takes the recorded keys and copies their applied values. A key written again afterwards is
+     * recorded again.
+     *
+     * @param changed Keys recorded since the last call.
+     * @return PUT operations for present keys and DELETE operations for removed keys.
+     */
+    List<Operation> drainChanged(Set<String> changed) {
+        List<Operation> operations = new ArrayList<Operation>();
+        for (String key : new ArrayList<String>(changed)) {
+            changed.remove(key);
+            Object value = this.store.get(key);
+            if (value == null) {
+                operations.add(new Operation(MethodType.DELETE, key, MethodType.DELETE.name(), "internal"));
+            } else {
+                operations.add(new Operation(MethodType.PUT, key, value, "internal"));
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Commits in this group's log that the range now belongs to another group. Writes to the range
+     * that are in flight on this leader finish first, later ones are redirected.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of the new owner.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the hand-off was not applied in time.
+     */
+    void handOffRange(long fromPosition, long toPosition, int groupId) throws RemoteException {
+        this.rangeLock.writeLock().lock();
+        try {
+            this.checkRangeMigration();
+            this.submitCommand(new Operation(MethodType.RANGE, MethodType.RANGE.name(), new long[]{fromPosition, toPosition, groupId}, "internal"));
+            if (this.ranges.ownerOf(toPosition) != groupId) {
+                throw new RemoteBusinessException("Hand-off of the range was not applied in time");
+            }
+        } finally {
+            this.rangeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param toPosition Last position of a range.
+     * @param groupId    Id of the group the range is handed to.
+     * @return true if this replica applied the hand-off of the range to the group.
+     */
+    boolean handedOff(long toPosition, int groupId) {
+        return this.ranges.ownerOf(toPosition) == groupId;
+    }
+
+    /**
+     * Commits in this group's log that the group owns the range from now on.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of this group.
+     * @throws RemoteException if the change could not be committed.
+     */
+    void takeOverRange(long fromPosition, long toPosition, int groupId) throws RemoteException {
+        this.leaderUpdateWrapper(MethodType.RANGE, MethodType.RANGE.name(), new long[]{fromPosition, toPosition, groupId});
+    }
+
+    /**
+     * Commits operations copied from another group as one batch through the leader of this group.
+     * The copy bypasses the owner check because the group does not own the range yet.
+     *
+     * @param operations PUT and DELETE operations to commit.
+     * @throws RemoteException if the batch could not be committed.
+     */
+    void importOperations(List<Operation> operations) throws RemoteException {
+        this.leaderUpdateWrapper(MethodType.BATCH, "BATCH-" + UUID.randomUUID(), new ArrayList<Operation>(operations));
+    }
+
+    /**
+     * Moves a range of the consistent-hash ring to another group, see {@link RangeMigrator}.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of the target group.
+     * @param authId       Authorization ID for the operation.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the node hosts a single group or the move failed.
+     */
+    @Override
+    public void moveRange(long fromPosition, long toPosition, int groupId, String authId) throws RemoteException {
+        this.authCheck(authId);
+        this.rangeMigrator().moveRange(fromPosition, toPosition, groupId);
+    }
+
+    /**
+     * Splits the range containing a position and moves the upper part to another group, see {@link RangeMigrator}.
+     *
+     * @param position Position to split at.
+     * @param groupId  Id of the group taking the upper part.
+     * @param authId   Authorization ID for the operation.
+     * @return Last position of the moved part.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the node hosts a single group or the split failed.
+     */
+    @Override
+    public long splitRange(long position, int groupId, String authId) throws RemoteException {
+        this.authCheck(authId);
+        return this.rangeMigrator().splitRange(position, groupId);
+    }
+
+    private RangeMigrator rangeMigrator() throws RemoteBusinessException {
+        if (this.migrator == null) {
+            throw new RemoteBusinessException("Range migration needs more than one group");
+        }
+        return this.migrator;
+    }
+
+    public void setRangeMigrator(RangeMigrator migrator) {
+        this.migrator = migrator;
+    }
+
+    /**
+     * Number of acceptors that form a majority of the configured servers. Suspected servers still
+     * count, otherwise two sides of a partition could each form a majority of the servers they see.
+     *
+     * @return Majority size.
+     */
+    private int majority() {
+        return this.sConfig.getNumServers() / 2 + 1;
+    }
+
+    /**
+     * Number of acceptors that have to promise in phase 1, a majority unless prepareQuorum is configured.
+     *
+     * @return Phase 1 quorum size.
+     */
+    private int prepareQuorum() {
+        return this.sConfig.getPrepareQuorum() > 0 ? this.sConfig.getPrepareQuorum() : this.majority();
+    }
+
+    /**
+     * Number of acceptors that have to accept in phase 2, a majority unless acceptQuorum is configured.
+     *
+     * @return Phase 2 quorum size.
+     */
+    private int acceptQuorum() {
+        return this.sConfig.getAcceptQuorum() > 0 ? this.sConfig.getAcceptQuorum() : this.majority();
+    }
+
+    /**
+     * Proposes an operation through Multi-Paxos. The leader reuses the ballot promised for the whole
+     * log range and only sends the accept phase for the new slot. Up to pipelineWindow slots are in
+     * flight at the same time; they may be chosen out of order but the call only returns once every
+     * slot up to its own was applied, so commands still take effect in log order.
+     * A failed accept may still have reached some acceptors, so retries stay in the same slot: the
+     * operation is proposed again there unless the slot was chosen meanwhile, and only a slot chosen
+     * with another value makes the retry take a new slot. The operation is never chosen twice.
+     *
+     * @param operation Operation to be proposed.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the operation could not be chosen or was not applied in time.
+     */
+    private void multiPaxosPropose(Operation operation) throws RemoteException {
+        int counter = 0;
+        long slot = -1;
+        while (true) {
+            counter++;
+            try {
+                if (this.rotation == null) {
+                    this.prepareLeadership();
+                }
+                if (slot >= 0 && this.paxosLog.isChosen(slot)) {
+                    // Chosen by the recovery of a new leader or by a node revoking the slot
+                    List<Operation> chosen = this.paxosLog.chosenFrom(slot, 1);
+                    if (chosen.isEmpty()) {
+                        throw new RemoteBusinessException("Slot " + slot + " was compacted before the outcome of the proposal was known");
+                    }
+                    if (!operation.equals(chosen.get(0))) {
+                        slot = -1;
+                    }
+                } else {
+                    this.pipeline.acquire();
+                    try {
+                        if (this.rotation != null) {
+                            // Own slots are promised to this node in round 0, phase 1 is not needed
+                            if (slot < 0) {
+                                slot = this.rotation.allocate();
+                                this.paxosLog.reserveSlot(slot);
+                            }
+                            this.acceptSlot(this.slotCopy(operation, slot, this.rotation.ownerBallot()));
+                        } else {
+                            if (slot < 0) {
+                                slot = this.paxosLog.allocateSlot();
+                            }
+                            this.acceptSlot(this.slotCopy(operation, slot, this.leaderBallot));
+                        }
+                    } finally {
+                        this.pipeline.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteBusinessException("Interrupted while proposing");
+            } catch (RemoteBusinessException e) {
+                if (counter > this.sConfig.getRequestAttempts()) {
+                    throw e;
+                }
+                continue;
+            }
+            if (slot < 0) {
+                continue;
+            }
+            try {
+                if (!this.paxosLog.awaitApplied(slot, this.delay * this.sConfig.getRequestAttempts())) {
+                    throw new RemoteBusinessException("Slot " + slot + " was chosen but not applied in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteBusinessException("Interrupted while proposing");
+            }
+            return;
+        }
+    }
+
+    /**
+     * Skips the own slots below a slot another node is using. The skipped slots are chosen as NOOP
+     * right away and announced to the other learners in the background.
+     *
+     * @param slot Slot in use by another node.
+     * @throws RemoteBusinessException if applying the chosen slots fails.
+     */
+    private void skipOwnSlots(long slot) throws RemoteBusinessException {
+        long from = this.rotation.skipBefore(slot);
+        if (from < 0) {
+            return;
+        }
+        this.chooseSkipped(this.serverId, from, slot);
+        if (!this.skipAnnouncing.compareAndSet(false, true)) {
+            // The pending announcement picks up this range as well
+            return;
+        }
+        final PaxosServer self = this;
+        Future<?> future = this.rpcExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                self.skipAnnouncing.set(false);
+                List<long[]> ranges = self.rotation.takeUnannounced();
+                List<LearnerInterface> learners = self.learnersSnapshot();
+                for (int index = 0; index < learners.size(); index++) {
+                    LearnerInterface learnerInterface = learners.get(index);
+                    if (index == serverId || learnerInterface == null) {
+                        continue;
+                    }
+                    try {
+                        for (long[] range : ranges) {
+                            learnerInterface.skipped(serverId, range[0], range[1]);
+                        }
+                    } catch (Exception e) {
+                        // The learner revokes the slots if it keeps waiting for them
+                    }
+                }
+            }
+        });
+        this.trackFuture(future);
+    }
+
+    /**
+     * Chooses NOOP for every slot of the owner in the given range and applies what became applicable.
+     *
+     * @param ownerId  Owner of the skipped slots.
+     * @param fromSlot First slot of the range.
+     * @param toSlot   Slot after the range.
+     * @throws RemoteBusinessException if applying the chosen slots fails.
+     */
+    private void chooseSkipped(int ownerId, long fromSlot, long toSlot) throws RemoteBusinessException {
+        Operation noop = new Operation(MethodType.NOOP, MethodType.NOOP.name(), MethodType.NOOP.name(), "internal");
+        long ballot = BallotGenerator.pack(0, ownerId);
+        for (long slot = fromSlot; slot < toSlot; slot++) {
+            if (this.rotation.ownerOf(slot) == ownerId) {
+                this.paxosLog.choose(this.slotCopy(noop, slot, ballot));
+            }
+        }
+        try {
+            this.applyChosen();
+        } catch (BusinessException e) {
+            throw new RemoteBusinessException(e.getMessage());
+        }
+    }
+
+    /**
+     * Learns that the owner of rotating slots skipped its slots in the given range.
+     *
+     * @param ownerId  Owner of the skipped slots.
+     * @param fromSlot First skipped slot.
+     * @param toSlot   Slot after the range.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if rotating slots are disabled.
+     */
+    @Override
+    public void skipped(int ownerId, long fromSlot, long toSlot) throws RemoteException {
+        if (this.rotation == null) {
+            throw new RemoteBusinessException("Rotating slots are not enabled on server " + this.serverId);
+        }
+        this.chooseSkipped(ownerId, fromSlot, toSlot);
+    }
+
+    /**
+     * Takes over the slots of an owner that does not fill them, starting at the first slot this
+     * replica waits for up to the highest slot known to be chosen. Phase 1 runs with a higher ballot
+     * for each slot, a value the owner already got accepted is completed, otherwise the slot gets a NOOP.
+     *
+     * @param fromSlot First slot to take over.
+     * @param ownerId  Owner of the slots.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if a quorum did not promise or accept.
+     */
+    private void revokeSlots(long fromSlot, int ownerId) throws RemoteException {
+        Operation noop = new Operation(MethodType.NOOP, MethodType.NOOP.name(), MethodType.NOOP.name(), "internal");
+        long toSlot = this.paxosLog.getChosenIndex();
+        for (long slot = fromSlot; slot <= toSlot; slot += this.rotation.getOwners()) {
+            if (this.paxosLog.isChosen(slot)) {
+                continue;
+            }
+            long proposalId = this.generateProposalId();
+            Operation value = this.prepareSlot(proposalId, this.slotCopy(noop, slot, proposalId));
+            this.acceptSlot(this.slotCopy(value, slot, proposalId));
+        }
+    }
+
+    /**
+     * Promises the given ballot for every slot starting from fromSlot.
+     *
+     * @param proposalId The ballot of the leader.
+     * @param fromSlot   The first slot covered by the promise.
+     * @return Operations accepted by this acceptor from the given slot onwards.
+     * @throws RemoteException       if a remote error occurs.
+     * @throws PaxosRejectException if a higher ballot was already promised.
+     */
+    @Override
+    public List<Operation> prepareRange(long proposalId, long fromSlot) throws RemoteException {
+        this.checkLease(proposalId);
+        List<Operation> accepted = this.paxosLog.promiseRange(proposalId, fromSlot);
+        this.ballots.observe(proposalId);
+        return accepted;
+    }
+
+    /**
+     * Asynchronously calls the learn method on all learners for a given proposal ID and proposed value.
+     *
+     * @param proposalId    Proposal ID associated with the value.
+     * @param proposedValue Value proposed to be learned.
+     */
+    private void callLearners (long proposalId, Operation proposedValue) {
+        // executing learning on other servers asynchronously to avoid deadlock
+        final List<LearnerInterface> learners = this.learnersSnapshot();
+        final PaxosServer self = this;
+        // Submit a task to the learnExecutor to call the learn method on all learners
+        Future<?> future = this.learnExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (LearnerInterface learnerInterface: learners) {
+                    try {
+                        // Call the learn method on all other learners
+                        learnerInterface.learn(self.serverId, proposalId, proposedValue);
+                    } catch (Exception e) {
+//                        self.loggerEx(e);
+                    }
+                }
+            }
+        });
+        // Add the future to the list of futures for tracking
+        this.trackFuture(future);
+    }
+
+    /**
+     * Accepts a proposal in the Paxos algorithm.
+     *
+     * @param proposalId    Proposal ID for the operation.
+     * @param proposalValue Proposal value to be accepted.
+     * @return List of accept results.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the proposal is rejected.
+     */
+    private List<Object> accept(long proposalId, Object proposalValue) throws RemoteException {
+        this.generateRandomExceptions();
+        final Operation temp = (Operation) proposalValue;
+        this.paxosLog.accept(temp);
+        if (this.rotation != null) {
+            this.skipOwnSlots(temp.getSlot());
+        }
+        List<Object> result = new LinkedList<Object>();
+        result.add(proposalId);
+        result.add(temp);
+        if (!this.chosenNotify) {
+            this.callLearners(proposalId, temp);
+        }
+        return result;
+    }
+
+    /**
+     * Wrapper method for the accept phase, ensuring the proposal has an equal or higher priority before proceeding.
+     *
+     * @param proposalId     The proposal ID for the accept phase
+     * @param proposalValue  The value associated with the proposal
+     * @return A list of objects representing the result of the accept phase
+     * @throws RemoteException       If a remote communication error occurs
+     * @throws RemoteBusinessException If a lower-priority proposal ID is detected in the Accept-Request phase
+     */
+    @Override
+    public List<Object> acceptWrapper (long proposalId, Object proposalValue) throws RemoteException {
+        return this.accept(proposalId, proposalValue);
+    }
+
+    /**
+     * Learns and processes the accepted value in the Paxos algorithm. The value is chosen once a
+     * majority of distinct acceptors reported accepting the same ballot for its slot.
+     *
+     * @param acceptorId    Id of the acceptor that accepted the value.
+     * @param proposalId    Proposal ID for the accepted value.
+     * @param acceptedValue Accepted value to be learned.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if learning fails.
+     */
+    @Override
+    public void learn(int acceptorId, long proposalId, Object acceptedValue) throws RemoteException {
+        Operation operation = (Operation) acceptedValue;
+        if (this.paxosLog.vote(operation, acceptorId, this.acceptQuorum())) {
+            this.learnChosen(operation);
+        }
+    }
+
+    /**
+     * Learns a value the proposer reported as chosen.
+     *
+     * @param slot        Slot of the chosen value.
+     * @param proposalId  Proposal ID the value was chosen with.
+     * @param chosenValue Chosen value, or null to use the value this acceptor accepted.
+     * @return false if the value was left out and this acceptor did not accept it.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if learning fails.
+     */
+    @Override
+    public boolean chosen(long slot, long proposalId, Object chosenValue) throws RemoteException {
+        Operation operation = chosenValue != null ? (Operation) chosenValue : this.paxosLog.valueOf(slot, proposalId);
+        if (operation == null) {
+            return false;
+        }
+        this.learnChosen(operation);
+        return true;
+    }
+
+    /**
+     * Serves a chunk of this replica's latest snapshot to a node that is catching up.
+     *
+     * @param index  Index of the snapshot being transferred, or -1 for the latest one.
+     * @param offset Position of the chunk in the serialized snapshot.
+     * @param length Maximum number of bytes, 0 only describes the snapshot.
+     * @return The chunk, or null without snapshot or if the requested one was replaced.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the snapshot can not be read.
+     */
+    @Override
+    public SnapshotChunk snapshotChunk(long index, long offset, int length) throws RemoteException {
+        if (this.snapshotter == null) {
+            return null;
+        }
+        try {
+            return this.snapshotter.chunk(index, offset, length);
+        } catch (IOException e) {
+            throw new RemoteBusinessException("Snapshot can not be read: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves chosen values to a node that is catching up.
+     *
+     * @param fromSlot   First slot to return.
+     * @param maxEntries Maximum number of values returned.
+     * @return Chosen operations in slot order, stopping at the first slot this replica does not know.
+     * @throws RemoteException if a remote error occurs.
+     */
+    @Override
+    public List<Operation> fetchChosen(long fromSlot, int maxEntries) throws RemoteException {
+        return this.paxosLog.chosenFrom(fromSlot, Math.min(maxEntries, CATCH_UP_BATCH));
+    }
+
+    /**
+     * Serves hashes of this replica's Merkle tree for anti-entropy. Applies hold the same lock, so
+     * the hashes always match the returned applied index.
+     *
+     * @param nodeIds Numbers of the tree nodes, the root is 1.
+     * @return The hashes with the applied index, or null without Merkle tree.
+     * @throws RemoteException if a remote error occurs.
+     */
+    @Override
+    public MerkleNodes merkleNodes(int[] nodeIds) throws RemoteException {
+        synchronized (this.applyLock) {
+            if (this.merkle == null) {
+                return null;
+            }
+            return new MerkleNodes(this.paxosLog.getAppliedIndex(), this.merkle.hashes(nodeIds));
+        }
+    }
+
+    /**
+     * Serves the entries of a bucket of this replica's Merkle tree for anti-entropy.
+     *
+     * @param bucket Bucket of the tree.
+     * @return Entries of the store in the bucket.
+     * @throws RemoteException if a remote error occurs.
+     */
+    @Override
+    public Map<String, Object> merkleBucket(int bucket) throws RemoteException {
+        this.storeLock.readLock().lock();
+        try {
+            return this.bucketEntries(bucket);
+        } finally {
+            this.storeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Collects the entries of the store that fall into a bucket of the Merkle tree.
+     *
+     * @param bucket Bucket of the tree.
+     * @return Entries of the bucket.
+     */
+    private HashMap<String, Object> bucketEntries(int bucket) {
+        HashMap<String, Object> entries = new HashMap<String, Object>();
+        for (Map.Entry<String, Object> entry : this.store.entrySet()) {
+            if (MerkleTree.bucketOf(entry.getKey()) == bucket) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Picks the replica whose store anti-entropy takes as correct: the leader, or the live node with
+     * the lowest id without a leader.
+     *
+     * @return The reference, or null if this replica is the reference or none is known.
+     */
+    private LearnerInterface antiEntropyReference() {
+        if (this.leaderBased) {
+            return this.leaderServerId == this.serverId ? null : this.getLeaderLearn();
+        }
+        for (LearnerInterface learner : this.learnersSnapshot()) {
+            if (learner != null) {
+                return learner == this ? null : learner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares this replica's store with a reference replica through their Merkle trees and copies
+     * the buckets that differ from the reference. The trees are compared level by level, only the
+     * children of differing nodes are requested. Stores are only compared while both replicas have
+     * applied the same slots, and nothing is written if either applied a slot in the meantime.
+     *
+     * @param reference Replica whose store is taken as correct.
+     * @return Number of repaired buckets, or -1 if the replicas were not at the same applied index.
+     * @throws RemoteException if the reference can not be reached.
+     */
+    private int antiEntropy(LearnerInterface reference) throws RemoteException {
+        int[] nodeIds = {1};
+        MerkleNodes local = this.merkleNodes(nodeIds);
+        long applied = local.getAppliedIndex();
+        MerkleNodes remote = reference.merkleNodes(nodeIds);
+        List<Integer> differing = new ArrayList<Integer>();
+        while (true) {
+            if (remote == null || remote.getAppliedIndex() != applied || local.getAppliedIndex() != applied) {
+                return -1;
+            }
+            differing.clear();
+            for (int index = 0; index < nodeIds.length; index++) {
+                if (local.getHashes()[index] != remote.getHashes()[index]) {
+                    differing.add(nodeIds[index]);
+                }
+            }
+            if (differing.isEmpty() || MerkleTree.isLeaf(differing.get(0))) {
+                break;
+            }
+            nodeIds = new int[2 * differing.size()];
+            for (int index = 0; index < differing.size(); index++) {
+                nodeIds[2 * index] = 2 * differing.get(index);
+                nodeIds[2 * index + 1] = 2 * differing.get(index) + 1;
+            }
+            local = this.merkleNodes(nodeIds);
+            remote = reference.merkleNodes(nodeIds);
+        }
+        if (differing.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, Map<String, Object>> buckets = new HashMap<Integer, Map<String, Object>>();
+        for (int node : differing) {
+            int bucket = node - MerkleTree.BUCKETS;
+            buckets.put(bucket, reference.merkleBucket(bucket));
+        }
+        // The buckets only match the compared hashes if the reference applied nothing since
+        remote = reference.merkleNodes(new int[]{1});
+        if (remote == null || remote.getAppliedIndex() != applied) {
+            return -1;
+        }
+        synchronized (this.applyLock) {
+            if (this.paxosLog.getAppliedIndex() != applied) {
+                return -1;
+            }
+            this.storeLock.writeLock().lock();
+            try {
+                for (Map.Entry<Integer, Map<String, Object>> bucket : buckets.entrySet()) {
+                    Map<String, Object> entries = bucket.getValue();
+                    for (String key : this.bucketEntries(bucket.getKey()).keySet()) {
+                        if (!entries.containsKey(key)) {
+                            this.writeEntry(key, null);
+                        }
+                    }
+                    for (Map.Entry<String, Object> entry : entries.entrySet()) {
+                        if (!Objects.equals(entry.getValue(), this.store.get(entry.getKey()))) {
+                            this.writeEntry(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            } finally {
+                this.storeLock.writeLock().unlock();
+            }
+        }
+        return buckets.size();
+    }
+
+    /**
+     * Brings this replica up to date in the background, used after it was restarted.
+     */
+    public void catchUpAsync() {
+        final PaxosServer self = this;
+        Future<?> future = this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                self.catchUp();
+            }
+        });
+        this.trackFuture(future);
+    }
+
+    /**
+     * Brings this replica up to date from the first peer that can serve it. If the peer already
+     * dropped log slots this replica did not apply, its snapshot is streamed and installed first.
+     * The rest of the log is then fetched and applied in batches.
+     *
+     * @return true if a peer served the catch-up.
+     */
+    public boolean catchUp() {
+        for (LearnerInterface learner : this.learnersSnapshot()) {
+            if (learner == null || learner == this) {
+                continue;
+            }
+            try {
+                SnapshotChunk head = this.snapshotter == null ? null : learner.snapshotChunk(-1, 0, 0);
+                if (head != null && head.getLogStart() > this.paxosLog.getAppliedIndex()) {
+                    long start = System.currentTimeMillis();
+                    Snapshotter.Snapshot snapshot = this.snapshotter.receive(learner, this.rpcExecutor, this.delay * this.sConfig.getRequestAttempts());
+                    if (snapshot != null) {
+                        this.installSnapshot(snapshot);
+                        this.logWriter.logger("Installed snapshot at slot " + snapshot.getIndex() + " of " + snapshot.getSize() + " bytes in " + (System.currentTimeMillis() - start) + " ms");
+                    }
+                }
+                List<Operation> tail;
+                while (!(tail = learner.fetchChosen(this.paxosLog.getAppliedIndex() + 1, CATCH_UP_BATCH)).isEmpty()) {
+                    this.learnAll(tail);
+                }
+                return true;
+            } catch (Exception e) {
+                this.loggerEx(e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pulls chosen values this replica missed from its peers, the leader first, in batches starting
+     * at the first slot it has not applied. Peers are asked until no hole is left. Without a hole
+     * only one peer is asked, which finds values missed at the end of the log. A replica whose peers
+     * already dropped the missing slots catches up from a snapshot instead.
+     *
+     * @return Number of values learned.
+     */
+    private int repairGap() {
+        List<LearnerInterface> peers = new ArrayList<LearnerInterface>();
+        if (this.leaderBased && this.leaderServerId != this.serverId && this.getLeaderLearn() != null) {
+            peers.add(this.getLeaderLearn());
+        }
+        for (LearnerInterface learner : this.learnersSnapshot()) {
+            if (learner != null && learner != this && !peers.contains(learner)) {
+                peers.add(learner);
+            }
+        }
+        int learned = 0;
+        boolean answered = false;
+        for (LearnerInterface peer : peers) {
+            try {
+                List<Operation> values;
+                do {
+                    values = peer.fetchChosen(this.paxosLog.getAppliedIndex() + 1, CATCH_UP_BATCH);
+                    answered = true;
+                    if (!values.isEmpty()) {
+                        this.learnAll(values);
+                        learned += values.size();
+                    }
+                } while (values.size() == CATCH_UP_BATCH);
+            } catch (Exception e) {
+                // Ask the next peer
+            }
+            if (answered && this.paxosLog.getChosenIndex() <= this.paxosLog.getAppliedIndex()) {
+                break;
+            }
+        }
+        if (learned > 0) {
+            this.logWriter.logger("Learned " + learned + " missed values from peers, applied up to slot " + this.paxosLog.getAppliedIndex());
+        } else if (this.snapshotter != null && this.paxosLog.getChosenIndex() > this.paxosLog.getAppliedIndex()) {
+            this.catchUp();
+        }
+        return learned;
+    }
+
+    /**
+     * Replaces the store with a snapshot received from a peer and continues the log after it.
+     *
+     * @param snapshot Snapshot with its data.
+     * @throws RemoteBusinessException if the write-ahead log could not be checkpointed.
+     */
+    private void installSnapshot(Snapshotter.Snapshot snapshot) throws RemoteBusinessException {
+        synchronized (this.applyLock) {
+            if (snapshot.getIndex() <= this.paxosLog.getAppliedIndex()) {
+                return;
+            }
+            this.storeLock.writeLock().lock();
+            try {
+                this.store.clear();
+                this.store.putAll(snapshot.getData());
+                if (this.merkle != null) {
+                    this.merkle.rebuild(this.store);
+                }
+                if (this.ranges != null && snapshot.getTokens() != null) {
+                    this.ranges.restore(snapshot.getTokens());
+                }
+                this.paxosLog.install(snapshot.getIndex());
+            } finally {
+                this.storeLock.writeLock().unlock();
+            }
+            this.paxosLog.checkpoint();
+            try {
+                this.applyChosen();
+            } catch (BusinessException e) {
+                throw new RemoteBusinessException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records values fetched from a peer as chosen and applies every slot that became applicable.
+     *
+     * @param operations Chosen operations carrying their slots.
+     * @throws RemoteBusinessException if applying an operation fails.
+     */
+    private void learnAll(List<Operation> operations) throws RemoteBusinessException {
+        try {
+            for (Operation operation : operations) {
+                this.paxosLog.choose(operation);
+                if (this.rotation != null) {
+                    this.skipOwnSlots(operation.getSlot());
+                }
+            }
+            this.applyChosen();
+        } catch (BusinessException e) {
+            throw new RemoteBusinessException(e.getMessage());
+        }
+    }
+
+    /**
+     * Applies chosen log slots to the server's state in slot order, stopping at the first slot that is not chosen yet.
+     * One thread applies at a time, other threads keep recording chosen values in the log meanwhile.
+     *
+     * @throws BusinessException if an illegal argument is encountered.
+     */
+    private void applyChosen() throws BusinessException {
+        synchronized (this.applyLock) {
+            Operation next;
+            while ((next = this.paxosLog.pollApplicable()) != null) {
+                this.applyOperation(next);
+                this.startSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Starts a snapshot in the background once enough slots were applied since the last one.
+     * Called in the apply thread right after a slot was applied, so the snapshot covers exactly
+     * the slots up to the applied index.
+     */
+    private void startSnapshot() {
+        long index = this.paxosLog.getAppliedIndex();
+        if (this.snapshotter == null || this.replaying || !this.snapshotter.due(index)
+                || !this.snapshotter.begin(index, this.ranges != null ? this.ranges.snapshot() : null)) {
+            return;
+        }
+        final PaxosServer self = this;
+        Future<?> future = this.executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Snapshotter.Snapshot snapshot = self.snapshotter.write();
+                    // Peers that are behind can still fetch the slots since the previous snapshot
+                    self.paxosLog.compact(snapshot.getLogStart());
+                    self.paxosLog.checkpoint();
+                    self.logWriter.logger("Snapshot at slot " + snapshot.getIndex() + ", log compacted up to slot " + snapshot.getLogStart());
+                } catch (Exception e) {
+                    self.loggerEx(e);
+                }
+            }
+        });
+        this.trackFuture(future);
+    }
+
+    /**
+     * Tracks a background task so it is cancelled when the server stops, dropping finished tasks
+     * so the list does not grow with every request.
+     *
+     * @param future Submitted task.
+     */
+    private void trackFuture(Future<?> future) {
+        synchronized (this.futureList) {
+            this.futureList.removeIf(Future::isDone);
+            this.futureList.add(future);
+        }
+    }
+
+    /**
+     * Applies the proposed operation to the server's state.
      *
      * @param operation Operation to be applied.
      * @throws BusinessException if an illegal argument is encountered.
      */
+    @SuppressWarnings("unchecked")
     private void applyOperation(Operation operation) throws BusinessException {
         if (operation == null) return;
         String storeKey = this.consStoreKey(operation.getAuthId(), operation.getKey());
         switch (operation.getType()) {
-            case PUT -> this.store.put(storeKey, operation.getValue());
-            case DELETE -> this.store.remove(storeKey);
-            case LOG -> this.logWriter.logger(operation.getValue() + " -> Current Store:- " + this.store.toString() + " ; Leader server Id:- " + this.leaderServerId + " ; Server view of connections :- " + this.acceptors + " ; Timestamp:- " + System.currentTimeMillis());
+            case PUT -> this.writeEntry(storeKey, operation.getValue());
+            case DELETE -> this.writeEntry(storeKey, null);
+            case LOG -> {
+                if (!this.replaying) {
+                    this.logWriter.logger(operation.getValue() + " -> Current Store:- " + this.store.toString() + " ; Leader server Id:- " + this.leaderServerId + " ; Server view of connections :- " + this.acceptorsSnapshot() + " ; Timestamp:- " + System.currentTimeMillis());
+                }
+            }
             case ELECT -> {
+                if (this.replaying) {
+                    // The leader is elected again after the restart
+                    return;
+                }
                 int leaderId = Integer.parseInt((String)operation.getValue());
                 this.setNewElectedLeader(leaderId);
                 this.logWriter.logger("Server " + leaderId + " elected as leader");
             }
+            case RANGE -> {
+                long[] range = (long[]) operation.getValue();
+                this.ranges.assign(range[0], range[1], (int) range[2]);
+                if (this.migrator != null) {
+                    this.migrator.observe(range[0], range[1], (int) range[2]);
+                }
+                this.logWriter.logger("Range (" + range[0] + ", " + range[1] + "] owned by group " + range[2]);
+            }
+            case NOOP -> {
+                // Filler for slots left empty by a previous leader
+            }
+            case BATCH -> {
+                this.storeLock.writeLock().lock();
+                try {
+                    for (Operation command : (List<Operation>) operation.getValue()) {
+                        this.applyOperation(command);
+                    }
+                } finally {
+                    this.storeLock.writeLock().unlock();
+                }
+            }
             default -> throw new BusinessException("Illegal Argument Exception");
         }
     }
 
+    /**
+     * Writes an entry of the store, keeping the running snapshot, the Merkle tree and a running
+     * range migration up to date.
+     *
+     * @param storeKey Key of the entry.
+     * @param value    New value, null removes the entry.
+     */
+    private void writeEntry(String storeKey, Object value) {
+        if (this.snapshotter != null) {
+            this.snapshotter.beforeWrite(storeKey);
+        }
+        Object previous = value == null ? this.store.remove(storeKey) : this.store.put(storeKey, value);
+        if (this.merkle != null) {
+            this.merkle.update(storeKey, previous, value);
+        }
+        this.trackChange(storeKey);
+    }
+
     /**
      * Stops the server asynchronously with an optional delay.
      *
@@ -888,9 +2956,16 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
         try {
             this.logger("Server Stop Called");
             this.config.put("serverStarted", false);
-            this.registryRPC.unbind(this.sConfig.getServiceKey().toString());
+            int groupId = this.sConfig.getGroupId();
+            try {
+                this.registryRPC.unbind(this.sConfig.getServiceKey().forGroup(groupId));
+            } catch (Exception e) {
+                // The registry is already gone if group 0 of the node stopped first
+            }
             UnicastRemoteObject.unexportObject((StoreService) this, true);
-            UnicastRemoteObject.unexportObject(this.registryRPC, true);
+            if (groupId == 0) {
+                UnicastRemoteObject.unexportObject(this.registryRPC, true);
+            }
             this.logger("Child thread interrupt called");
             for (Future<?> future : this.futureList) {
                 future.cancel(true);
@@ -898,12 +2973,17 @@ public class PaxosServer extends Server implements ProposerInterface, AcceptorIn
             if (force) {
                 this.executor.shutdownNow();
                 this.learnExecutor.shutdownNow();
+                this.rpcExecutor.shutdownNow();
             } else {
                 this.executor.shutdown();
                 this.learnExecutor.shutdown();
+                this.rpcExecutor.shutdown();
             }
             while (!this.executor.isTerminated() && !this.learnExecutor.isTerminated() && !Thread.interrupted()) {
             }
+            if (this.wal != null) {
+                this.wal.close();
+            }
             this.logger("Server Stopped");
             this.logWriter.close();
             return true;
@@ -16,6 +16,9 @@ public class ProjectEnums {
 		RUN,
 		LOG,
 		ELECT,
+		NOOP,
+		BATCH,
+		RANGE,
 	}
 	public enum RequestKeys {
 		type,
@@ -26,9 +29,25 @@ public class ProjectEnums {
 		StoreService,
 		CoordinatorService,
 		AcceptorService,
-		LearnerService,
+		LearnerService;
+
+		/**
+		 * Registry name of this service for a Paxos group, group 0 keeps the plain name.
+		 *
+		 * @param groupId Id of the group.
+		 * @return Name to bind and look up the service of the group.
+		 */
+		public String forGroup(int groupId) {
+			return groupId == 0 ? this.toString() : this.toString() + "_" + groupId;
+		}
 	}
 	public enum DataKeys {
 		Priority
 	}
+	public enum InstanceStatus {
+		PREACCEPTED,
+		ACCEPTED,
+		COMMITTED,
+		EXECUTED
+	}
 }
\ No newline at end of file
@@ -0,0 +1,235 @@
+package com.project.four.server;
+
+import com.project.four.interfaces.AcceptorInterface;
+import com.project.four.utills.PaxosRejectException;
+import com.project.four.utills.RemoteBusinessException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QuorumCall sends the same request to a set of acceptors in parallel and returns as soon as
+ * a quorum of them answered successfully. Slow or dead acceptors do not delay the caller and
+ * replies that arrive after the quorum was reached are ignored.
+ * When acceptors reject the request because they promised a higher ballot, the highest of those
+ * ballots is reported back to the caller.
+ * Every call measures the round trip time of each acceptor. A thrifty call uses these times to
+ * contact only the fastest quorum and falls back to the remaining acceptors if one of them fails
+ * or does not answer within twice the slowest expected round trip.
+ */
+public class QuorumCall {
+    /**
+     * A single remote call made against one acceptor.
+     *
+     * @param <T> Type of the reply.
+     */
+    public interface AcceptorCall<T> {
+        T call(AcceptorInterface acceptor) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final long timeout;
+    // Smoothed round trip time in nanoseconds per acceptor index
+    private final Map<Integer, Long> roundTrips = new ConcurrentHashMap<Integer, Long>();
+
+    /**
+     * @param executor Executor running the remote calls.
+     * @param timeout  Maximum milliseconds to wait for a quorum, 0 waits until every call finished.
+     */
+    public QuorumCall(ExecutorService executor, long timeout) {
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Calls every acceptor in parallel and waits for the given number of successful replies.
+     *
+     * @param acceptors Acceptors to call, null entries count as failed acceptors.
+     * @param quorum    Number of successful replies needed.
+     * @param call      Remote call to make.
+     * @param <T>       Type of the reply.
+     * @return The first quorum replies in arrival order.
+     * @throws PaxosRejectException   if the quorum was missed and at least one acceptor promised a higher ballot.
+     * @throws RemoteBusinessException if the quorum can not be reached anymore or the timeout expired.
+     */
+    public <T> List<T> call(List<AcceptorInterface> acceptors, int quorum, AcceptorCall<T> call) throws RemoteBusinessException {
+        return this.call(acceptors, quorum, call, false, false);
+    }
+
+    /**
+     * Calls every acceptor in parallel and waits for all of them, or until the timeout expired.
+     * Used when the caller can take a faster path if every acceptor answers the same.
+     *
+     * @param acceptors Acceptors to call, null entries count as failed acceptors.
+     * @param quorum    Number of successful replies needed at least.
+     * @param call      Remote call to make.
+     * @param <T>       Type of the reply.
+     * @return Every reply that arrived, in arrival order.
+     * @throws PaxosRejectException   if the quorum was missed and at least one acceptor promised a higher ballot.
+     * @throws RemoteBusinessException if fewer than quorum acceptors replied successfully.
+     */
+    public <T> List<T> callAll(List<AcceptorInterface> acceptors, int quorum, AcceptorCall<T> call) throws RemoteBusinessException {
+        return this.call(acceptors, quorum, call, false, true);
+    }
+
+    /**
+     * Calls only the quorum of acceptors with the lowest measured round trip time and contacts the
+     * others only if one of them fails or is slower than expected.
+     *
+     * @param acceptors Acceptors to call, null entries count as failed acceptors.
+     * @param quorum    Number of successful replies needed.
+     * @param call      Remote call to make.
+     * @param <T>       Type of the reply.
+     * @return The first quorum replies in arrival order.
+     * @throws PaxosRejectException   if the quorum was missed and at least one acceptor promised a higher ballot.
+     * @throws RemoteBusinessException if the quorum can not be reached anymore or the timeout expired.
+     */
+    public <T> List<T> callThrifty(List<AcceptorInterface> acceptors, int quorum, AcceptorCall<T> call) throws RemoteBusinessException {
+        return this.call(acceptors, quorum, call, true, false);
+    }
+
+    private <T> List<T> call(List<AcceptorInterface> acceptors, int quorum, AcceptorCall<T> call, boolean thrifty, boolean waitAll) throws RemoteBusinessException {
+        List<AcceptorInterface> targets = new ArrayList<AcceptorInterface>(acceptors);
+        List<Integer> order = new ArrayList<Integer>(targets.size());
+        int failed = 0;
+        for (int index = 0; index < targets.size(); index++) {
+            if (targets.get(index) == null) {
+                failed++;
+            } else {
+                order.add(index);
+            }
+        }
+        if (thrifty) {
+            // Acceptors without a measurement come first so that they get one
+            order.sort(Comparator.comparingLong(index -> this.roundTrips.getOrDefault(index, 0L)));
+        }
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<T>(this.executor);
+        int initial = thrifty ? Math.min(quorum, order.size()) : order.size();
+        int pending = 0;
+        int next = 0;
+        long slowest = 0;
+        for (; next < initial; next++) {
+            this.submit(completion, targets, order.get(next), call);
+            slowest = Math.max(slowest, this.roundTrips.getOrDefault(order.get(next), 0L));
+            pending++;
+        }
+        long rejectedBallot = -1;
+        List<T> replies = new ArrayList<T>(quorum);
+        long deadline = System.currentTimeMillis() + this.timeout;
+        long fallbackAt = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(2 * slowest) + 1;
+        try {
+            while ((waitAll ? pending > 0 : replies.size() < quorum) && replies.size() + pending + (order.size() - next) >= quorum) {
+                if (next < order.size() && (replies.size() + pending < quorum || System.currentTimeMillis() >= fallbackAt)) {
+                    // Fall back to the acceptors that were left out
+                    for (; next < order.size(); next++) {
+                        this.submit(completion, targets, order.get(next), call);
+                        pending++;
+                    }
+                }
+                Future<T> future;
+                if (next < order.size()) {
+                    long wait = fallbackAt - System.currentTimeMillis();
+                    if (this.timeout > 0) {
+                        wait = Math.min(wait, deadline - System.currentTimeMillis());
+                    }
+                    future = completion.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        if (this.timeout > 0 && System.currentTimeMillis() >= deadline) {
+                            break;
+                        }
+                        continue;
+                    }
+                } else if (this.timeout > 0) {
+                    future = completion.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (future == null) {
+                        break;
+                    }
+                } else {
+                    future = completion.take();
+                }
+                pending--;
+                try {
+                    replies.add(future.get());
+                } catch (ExecutionException e) {
+                    failed++;
+                    rejectedBallot = Math.max(rejectedBallot, rejectedBallot(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (replies.size() < quorum) {
+            if (rejectedBallot >= 0) {
+                throw new PaxosRejectException("Quorum not reached, ballot " + rejectedBallot + " already promised", rejectedBallot);
+            }
+            throw new RemoteBusinessException("Quorum not reached, " + replies.size() + " of " + quorum + " replied, " + failed + " failed");
+        }
+        return replies;
+    }
+
+    /**
+     * Submits the call for one acceptor and records its round trip time. A call that fails for
+     * another reason than a rejection counts as slow, so thrifty calls avoid the acceptor for a while.
+     *
+     * @param completion Completion service collecting the replies.
+     * @param targets    Acceptors of the call.
+     * @param index      Index of the acceptor to call.
+     * @param call       Remote call to make.
+     * @param <T>        Type of the reply.
+     */
+    private <T> void submit(ExecutorCompletionService<T> completion, List<AcceptorInterface> targets, int index, AcceptorCall<T> call) {
+        AcceptorInterface acceptor = targets.get(index);
+        completion.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                T reply = call.call(acceptor);
+                this.recordRoundTrip(index, System.nanoTime() - start);
+                return reply;
+            } catch (Exception e) {
+                if (rejectedBallot(e) < 0) {
+                    long penalty = TimeUnit.MILLISECONDS.toNanos(Math.max(1, this.timeout));
+                    this.recordRoundTrip(index, Math.max(System.nanoTime() - start, penalty));
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Adds a round trip sample to the smoothed round trip time of an acceptor.
+     *
+     * @param index  Index of the acceptor.
+     * @param sample Measured round trip in nanoseconds.
+     */
+    private void recordRoundTrip(int index, long sample) {
+        this.roundTrips.merge(index, sample, (previous, current) -> (previous * 7 + current) / 8);
+    }
+
+    /**
+     * Finds the promised ballot of a rejection, which may arrive wrapped in RMI exceptions.
+     *
+     * @param failure Failure of a single call.
+     * @return The promised ballot or -1 if the failure was not a rejection.
+     */
+    private static long rejectedBallot(Throwable failure) {
+        Throwable cause = failure;
+        while (cause != null) {
+            if (cause instanceof PaxosRejectException) {
+                return ((PaxosRejectException) cause).getPromisedBallot();
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+            cause = cause.getCause();
+        }
+        return -1;
+    }
+}
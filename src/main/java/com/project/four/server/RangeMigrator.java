@@ -0,0 +1,201 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import com.project.four.utills.RemoteBusinessException;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * RangeMigrator moves a range of the consistent-hash ring from one Paxos group to another while
+ * both groups keep serving requests. It runs on the node whose replica leads the source group:
+ * <ol>
+ *     <li>the keys of the range are copied to the target group in the background, in batches
+ *     committed through the target group's log,</li>
+ *     <li>keys written on the source group during the copy are copied again until only a few
+ *     are left,</li>
+ *     <li>the source group commits the hand-off of the range; the leader lets writes in flight
+ *     finish first and rejects later writes, so no write to the range commits after the hand-off,</li>
+ *     <li>the keys written before the hand-off are copied a last time and the target group commits
+ *     that it owns the range.</li>
+ * </ol>
+ * Between hand-off and take-over both groups answer requests for the range with a redirect, which
+ * the node router follows until the target group serves the range. Once the hand-off was attempted
+ * the move is only finished forward: hand-off, last copy and take-over are retried until the target
+ * group owns the range, otherwise the range would be left without owner.
+ * The copy only carries present keys, so keys the target group kept from an earlier move of the
+ * range are deleted before the copy, otherwise keys deleted meanwhile would come back. After the
+ * take-over the source group deletes its copy of the range.
+ * The node keeps its own copy of the ring as routing hint, updated whenever a local replica applies
+ * a change of ownership.
+ */
+public class RangeMigrator {
+    // Operations per batch when copying a range
+    private static final int COPY_BATCH_SIZE = 256;
+    // Catch-up rounds before the hand-off, the last copy after the hand-off takes the rest
+    private static final int CATCH_UP_ROUNDS = 8;
+    // Changed keys small enough to copy while the range is handed off
+    private static final int CATCH_UP_THRESHOLD = 64;
+    // Milliseconds between two attempts to finish a move after the hand-off
+    private static final long RETRY_INTERVAL = 500;
+
+    private final List<PaxosServer> groups;
+    private final HashRing ring;
+
+    /**
+     * @param groups Local replicas of the groups, indexed by group id.
+     * @param ring   Routing hint of the node.
+     */
+    public RangeMigrator(List<PaxosServer> groups, HashRing ring) {
+        this.groups = groups;
+        this.ring = ring;
+    }
+
+    /**
+     * Moves the range (fromPosition, toPosition] of the ring to another group.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range, has to be higher than fromPosition.
+     * @param groupId      Id of the target group.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the range is invalid or the move failed.
+     * @throws com.project.four.utills.RedirectException if the local replica does not lead the source group.
+     */
+    public void moveRange(long fromPosition, long toPosition, int groupId) throws RemoteException {
+        if (fromPosition >= toPosition) {
+            throw new RemoteBusinessException("Ranges wrapping around the ring have to be moved in two parts");
+        }
+        if (groupId < 0 || groupId >= this.groups.size()) {
+            throw new RemoteBusinessException("Unknown group " + groupId);
+        }
+        int sourceId = this.ring.ownerOfRange(fromPosition, toPosition);
+        if (sourceId < 0) {
+            throw new RemoteBusinessException("Range is owned by several groups, move the parts separately");
+        }
+        if (sourceId == groupId) {
+            return;
+        }
+        PaxosServer source = this.groups.get(sourceId);
+        PaxosServer target = this.groups.get(groupId);
+        source.checkRangeMigration();
+        Set<String> changed = source.startMigration(fromPosition, toPosition);
+        try {
+            this.purge(target, fromPosition, toPosition);
+            // Background copy of the range
+            this.copy(source.rangeSnapshot(fromPosition, toPosition), target);
+            // Catch up with the writes made during the copy
+            for (int round = 0; round < CATCH_UP_ROUNDS && changed.size() > CATCH_UP_THRESHOLD; round++) {
+                this.copy(source.drainChanged(changed), target);
+            }
+            this.finish(source, target, changed, fromPosition, toPosition, groupId);
+            try {
+                this.purge(source, fromPosition, toPosition);
+            } catch (RemoteException e) {
+                // The move is done, the keys left behind are deleted before the range comes back
+            }
+        } finally {
+            source.stopMigration();
+        }
+    }
+
+    /**
+     * Hands the range off, copies the last writes and lets the target group take it over, retrying
+     * until the target group committed the take-over. A hand-off that timed out may still be applied
+     * later, so the range is never given back to the source group.
+     *
+     * @param source       Local replica of the source group.
+     * @param target       Local replica of the target group.
+     * @param changed      Keys written in the range and not copied yet.
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of the target group.
+     * @throws RemoteBusinessException if the thread was interrupted while waiting for a retry.
+     */
+    private void finish(PaxosServer source, PaxosServer target, Set<String> changed, long fromPosition, long toPosition, int groupId) throws RemoteBusinessException {
+        while (true) {
+            try {
+                if (!source.handedOff(toPosition, groupId)) {
+                    source.handOffRange(fromPosition, toPosition, groupId);
+                }
+                // Every write before the hand-off is applied on this replica
+                List<Operation> last = source.drainChanged(changed);
+                try {
+                    this.copy(last, target);
+                } catch (RemoteException e) {
+                    // Copied again in the next attempt
+                    for (Operation operation : last) {
+                        changed.add(operation.getKey());
+                    }
+                    throw e;
+                }
+                target.takeOverRange(fromPosition, toPosition, groupId);
+                return;
+            } catch (RemoteException e) {
+                try {
+                    Thread.sleep(RETRY_INTERVAL);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RemoteBusinessException("Interrupted while moving the range to group " + groupId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the range containing a position at that position and moves the upper part to another group.
+     *
+     * @param position Position to split at.
+     * @param groupId  Id of the group taking the upper part.
+     * @return Last position of the moved part.
+     * @throws RemoteException          if a remote error occurs.
+     * @throws RemoteBusinessException if the split failed.
+     */
+    public long splitRange(long position, int groupId) throws RemoteException {
+        long toPosition = this.ring.tokenAtOrAfter(position);
+        this.moveRange(position, toPosition, groupId);
+        return toPosition;
+    }
+
+    /**
+     * Records a change of ownership applied by a local replica in the routing hint.
+     *
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @param groupId      Id of the new owner.
+     */
+    public void observe(long fromPosition, long toPosition, int groupId) {
+        this.ring.assign(fromPosition, toPosition, groupId);
+    }
+
+    /**
+     * Deletes the keys of a range through the log of a group that does not own the range.
+     *
+     * @param group        Local replica of the group.
+     * @param fromPosition Position before the range.
+     * @param toPosition   Last position of the range.
+     * @throws RemoteException if a batch could not be committed.
+     */
+    private void purge(PaxosServer group, long fromPosition, long toPosition) throws RemoteException {
+        List<Operation> deletes = new ArrayList<Operation>();
+        for (Operation entry : group.rangeSnapshot(fromPosition, toPosition)) {
+            deletes.add(new Operation(MethodType.DELETE, entry.getKey(), MethodType.DELETE.name(), "internal"));
+        }
+        this.copy(deletes, group);
+    }
+
+    /**
+     * Commits copied operations in the target group in batches.
+     *
+     * @param operations PUT and DELETE operations to copy.
+     * @param target     Local replica of the target group.
+     * @throws RemoteException if a batch could not be committed.
+     */
+    private void copy(List<Operation> operations, PaxosServer target) throws RemoteException {
+        for (int start = 0; start < operations.size(); start += COPY_BATCH_SIZE) {
+            target.importOperations(operations.subList(start, Math.min(operations.size(), start + COPY_BATCH_SIZE)));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.project.four.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RotatingSlots assigns the slots of the replicated log round-robin to the nodes, in the style of
+ * Mencius: slot s belongs to node s mod N. A node proposes its commands only in its own slots and
+ * does not need phase 1 for them, because every acceptor treats round 0 of the owner as already
+ * promised to it. Any other node has to run phase 1 with a higher ballot and may only propose a NOOP
+ * or a value already accepted.
+ * Slots a node leaves unused because other nodes are ahead are skipped: the owner chooses a NOOP for
+ * them directly and announces the skipped ranges to the other learners, merging adjacent ranges so
+ * that an idle node sends few messages.
+ */
+public class RotatingSlots {
+    private final int ownerId;
+    private final int owners;
+    // Lowest own slot that was neither used nor skipped yet
+    private final AtomicLong nextOwn;
+    // Skipped ranges [from, to) that were not announced to the other learners yet
+    private final List<long[]> unannounced = new ArrayList<long[]>();
+
+    /**
+     * @param ownerId Server id of this node.
+     * @param owners  Number of nodes the slots rotate over.
+     */
+    public RotatingSlots(int ownerId, int owners) {
+        this.ownerId = ownerId;
+        this.owners = Math.max(1, owners);
+        this.nextOwn = new AtomicLong(ownerId);
+    }
+
+    /**
+     * @param slot Slot number.
+     * @return Server id of the node owning the slot.
+     */
+    public int ownerOf(long slot) {
+        return (int) (slot % this.owners);
+    }
+
+    /**
+     * @return Ballot the owner uses in its own slots, lower than every ballot of a phase 1.
+     */
+    public long ownerBallot() {
+        return BallotGenerator.pack(0, this.ownerId);
+    }
+
+    /**
+     * @return Number of nodes the slots rotate over.
+     */
+    public int getOwners() {
+        return owners;
+    }
+
+    /**
+     * Takes the next own slot for a new proposal.
+     *
+     * @return Own slot that was neither used nor skipped before.
+     */
+    public long allocate() {
+        return this.nextOwn.getAndAdd(this.owners);
+    }
+
+    /**
+     * Skips every own slot below the given slot that was not used yet. Each own slot is either
+     * allocated or skipped, never both.
+     *
+     * @param slot Slot another node is using.
+     * @return First skipped slot, the skipped slots are every own slot from there up to the given
+     * slot. -1 if no slot had to be skipped.
+     */
+    public long skipBefore(long slot) {
+        long target = slot + Math.floorMod(this.ownerId - slot, (long) this.owners);
+        while (true) {
+            long current = this.nextOwn.get();
+            if (current >= target) {
+                return -1;
+            }
+            if (this.nextOwn.compareAndSet(current, target)) {
+                synchronized (this.unannounced) {
+                    long[] last = this.unannounced.isEmpty() ? null : this.unannounced.get(this.unannounced.size() - 1);
+                    if (last != null && last[1] == current) {
+                        last[1] = target;
+                    } else {
+                        this.unannounced.add(new long[]{current, target});
+                    }
+                }
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Continues after a restart with the first own slot at or after the given slot. Own slots below it
+     * may have been used before the restart and are not proposed in again, the ones left empty are
+     * filled by revocation like the slots of a failed node.
+     *
+     * @param slot Lowest slot that was certainly not used before the restart.
+     */
+    public void restartAt(long slot) {
+        long target = slot + Math.floorMod(this.ownerId - slot, (long) this.owners);
+        this.nextOwn.accumulateAndGet(target, Math::max);
+    }
+
+    /**
+     * Returns and forgets the skipped ranges that were not announced yet.
+     *
+     * @return Skipped ranges [from, to) in slot order.
+     */
+    public List<long[]> takeUnannounced() {
+        synchronized (this.unannounced) {
+            List<long[]> ranges = new ArrayList<long[]>(this.unannounced);
+            this.unannounced.clear();
+            return ranges;
+        }
+    }
+}
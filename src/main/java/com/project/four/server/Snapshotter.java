@@ -0,0 +1,467 @@
+package com.project.four.server;
+
+import com.project.four.interfaces.LearnerInterface;
+import com.project.four.utills.SnapshotChunk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshotter takes snapshots of the key-value store at a log index while writes continue.
+ * A snapshot starts in the apply thread right after the slot it covers was applied. From then on the
+ * apply thread reports every key before it changes it, and the first report of a key keeps the value
+ * the key had at the snapshot index (copy-on-write per key). The snapshot is written in the
+ * background from the live store, using the kept value for every key changed in the meantime.
+ * With a directory the latest snapshot is kept in a file, otherwise serialized in memory.
+ * The latest snapshot can be streamed to another node in chunks. The receiver requests a few chunks
+ * ahead of the one it writes, which bounds both the memory used and the requests in flight, and
+ * checks every chunk and the whole snapshot against their CRC32.
+ */
+public class Snapshotter {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    // Marks a key that did not exist at the snapshot index
+    private static final Object ABSENT = new Object();
+    // Bytes per chunk when a snapshot is streamed to another node
+    private static final int CHUNK_SIZE = 1 << 20;
+    // Chunks requested ahead of the one being written
+    private static final int WINDOW = 4;
+
+    /**
+     * Store and ring of a replica at a log index.
+     */
+    public static class Snapshot {
+        private final long index;
+        private final long logStart;
+        private final TreeMap<Long, Integer> tokens;
+        private final Map<String, Object> data;
+        private final long size;
+        private final long checksum;
+
+        public Snapshot(long index, long logStart, TreeMap<Long, Integer> tokens, Map<String, Object> data, long size, long checksum) {
+            this.index = index;
+            this.logStart = logStart;
+            this.tokens = tokens;
+            this.data = data;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Highest slot dropped from the log when this snapshot was taken.
+         */
+        public long getLogStart() {
+            return logStart;
+        }
+
+        public TreeMap<Long, Integer> getTokens() {
+            return tokens;
+        }
+
+        /**
+         * @return Keys and values of the store, null once the snapshot is only kept serialized.
+         */
+        public Map<String, Object> getData() {
+            return data;
+        }
+
+        /**
+         * @return Size of the serialized snapshot in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return CRC32 of the serialized snapshot.
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+    }
+
+    private final Map<String, Object> store;
+    private final File directory;
+    private final long interval;
+    // Values of the keys changed since the running snapshot started, null when no snapshot runs
+    private volatile Map<String, Object> preImages = null;
+    private long pendingIndex = -1;
+    private long pendingLogStart = -1;
+    private TreeMap<Long, Integer> pendingTokens = null;
+    // Latest snapshot and, without a directory, its serialized form, replaced together under the lock
+    private volatile Snapshot latest = null;
+    private byte[] latestBytes = null;
+
+    /**
+     * @param store     Store of the replica.
+     * @param directory Directory of the snapshot file, null keeps the snapshot in memory.
+     * @param interval  Applied slots between two snapshots.
+     */
+    public Snapshotter(Map<String, Object> store, File directory, long interval) {
+        this.store = store;
+        this.directory = directory;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * @param appliedIndex Applied index of the replica.
+     * @return true if enough slots were applied since the latest snapshot.
+     */
+    public boolean due(long appliedIndex) {
+        Snapshot snapshot = this.latest;
+        return appliedIndex - (snapshot == null ? -1 : snapshot.getIndex()) >= this.interval;
+    }
+
+    /**
+     * Starts a snapshot at the current applied index. Has to be called from the apply thread.
+     *
+     * @param index  Applied index the snapshot covers.
+     * @param tokens Ring of the replica at that index, null with a single group.
+     * @return true if the snapshot started, false if another snapshot is still being written.
+     */
+    public synchronized boolean begin(long index, TreeMap<Long, Integer> tokens) {
+        if (this.preImages != null) {
+            return false;
+        }
+        Snapshot snapshot = this.latest;
+        // The log keeps the slots since the previous snapshot for peers that are behind
+        this.pendingLogStart = snapshot == null ? -1 : snapshot.getIndex();
+        this.pendingIndex = index;
+        this.pendingTokens = tokens;
+        this.preImages = new ConcurrentHashMap<String, Object>();
+        return true;
+    }
+
+    /**
+     * Keeps the value of a key before the apply thread changes it while a snapshot is written.
+     *
+     * @param key Key about to change.
+     */
+    public void beforeWrite(String key) {
+        Map<String, Object> preImages = this.preImages;
+        if (preImages != null && !preImages.containsKey(key)) {
+            preImages.put(key, this.store.getOrDefault(key, ABSENT));
+        }
+    }
+
+    /**
+     * Writes the snapshot started with {@link #begin(long, TreeMap)} and makes it the latest one.
+     *
+     * @return The written snapshot, without its data.
+     * @throws IOException if the snapshot file could not be written.
+     */
+    public Snapshot write() throws IOException {
+        Map<String, Object> preImages;
+        long index;
+        long logStart;
+        TreeMap<Long, Integer> tokens;
+        synchronized (this) {
+            preImages = this.preImages;
+            index = this.pendingIndex;
+            logStart = this.pendingLogStart;
+            tokens = this.pendingTokens;
+        }
+        try {
+            Map<String, Object> data = new HashMap<String, Object>();
+            for (Map.Entry<String, Object> entry : this.store.entrySet()) {
+                // The store is read before the kept values, so a key changed meanwhile is always found there
+                data.put(entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<String, Object> entry : preImages.entrySet()) {
+                if (entry.getValue() == ABSENT) {
+                    data.remove(entry.getKey());
+                } else {
+                    data.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return this.keep(new Snapshot(index, logStart, tokens, data, 0, 0));
+        } finally {
+            this.preImages = null;
+        }
+    }
+
+    /**
+     * Loads the latest snapshot file, used when a replica restarts.
+     *
+     * @return The latest snapshot with its data, or null if there is none.
+     * @throws IOException if the snapshot file can not be read.
+     */
+    public Snapshot load() throws IOException {
+        File file = this.latestFile();
+        if (file == null) {
+            return null;
+        }
+        try (CheckedInputStream in = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            Snapshot snapshot = decode(in, file.length());
+            this.latest = new Snapshot(snapshot.getIndex(), snapshot.getLogStart(), snapshot.getTokens(), null, file.length(), in.getChecksum().getValue());
+            return snapshot;
+        }
+    }
+
+    /**
+     * Reads a chunk of the latest snapshot for another node.
+     *
+     * @param index  Index of the snapshot being transferred, -1 for the latest one.
+     * @param offset Position of the chunk.
+     * @param length Maximum number of bytes, 0 only describes the snapshot.
+     * @return The chunk, or null if there is no snapshot or the requested one was replaced.
+     * @throws IOException if the snapshot file can not be read.
+     */
+    public SnapshotChunk chunk(long index, long offset, int length) throws IOException {
+        Snapshot snapshot;
+        byte[] bytes;
+        synchronized (this) {
+            snapshot = this.latest;
+            bytes = this.latestBytes;
+        }
+        if (snapshot == null || (index >= 0 && index != snapshot.getIndex()) || offset < 0 || offset > snapshot.getSize()) {
+            return null;
+        }
+        byte[] data = new byte[(int) Math.min(Math.min(length, CHUNK_SIZE), snapshot.getSize() - offset)];
+        if (this.directory == null) {
+            if (bytes == null) {
+                return null;
+            }
+            System.arraycopy(bytes, (int) offset, data, 0, data.length);
+        } else {
+            try (FileChannel channel = FileChannel.open(this.fileFor(snapshot.getIndex()).toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                }
+            } catch (NoSuchFileException e) {
+                // A newer snapshot replaced it
+                return null;
+            }
+        }
+        if (this.latest != snapshot) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(data);
+        return new SnapshotChunk(snapshot.getIndex(), snapshot.getLogStart(), snapshot.getSize(), snapshot.getChecksum(), offset, data, checksum.getValue());
+    }
+
+    /**
+     * Streams a peer's latest snapshot and makes it the latest local one.
+     *
+     * @param peer     Learner serving the snapshot.
+     * @param executor Executor running the chunk requests.
+     * @param timeout  Maximum milliseconds to wait for a chunk, 0 waits without limit.
+     * @return The received snapshot with its data, or null if the peer has no snapshot.
+     * @throws IOException if the transfer failed or the snapshot does not match its checksum.
+     */
+    public Snapshot receive(LearnerInterface peer, ExecutorService executor, long timeout) throws IOException {
+        SnapshotChunk head = peer.snapshotChunk(-1, 0, 0);
+        if (head == null) {
+            return null;
+        }
+        long index = head.getIndex();
+        long size = head.getTotalSize();
+        File temp = this.directory == null ? null : new File(this.directory, SNAPSHOT_PREFIX + index + ".tmp");
+        ByteArrayOutputStream memory = temp == null ? new ByteArrayOutputStream((int) Math.min(size, Integer.MAX_VALUE)) : null;
+        CRC32 total = new CRC32();
+        ArrayDeque<Future<SnapshotChunk>> window = new ArrayDeque<Future<SnapshotChunk>>();
+        long requested = 0;
+        try (OutputStream out = temp == null ? memory : new FileOutputStream(temp)) {
+            long written = 0;
+            while (written < size) {
+                while (window.size() < WINDOW && requested < size) {
+                    final long offset = requested;
+                    window.add(executor.submit(() -> peer.snapshotChunk(index, offset, CHUNK_SIZE)));
+                    requested += CHUNK_SIZE;
+                }
+                SnapshotChunk chunk = this.await(window.poll(), timeout);
+                if (chunk != null && !this.intact(chunk, written)) {
+                    // Ask once more for a chunk damaged on the way
+                    chunk = peer.snapshotChunk(index, written, CHUNK_SIZE);
+                }
+                if (chunk == null || !this.intact(chunk, written)) {
+                    throw new IOException("Snapshot " + index + " was replaced or damaged during the transfer");
+                }
+                out.write(chunk.getData());
+                total.update(chunk.getData());
+                written += chunk.getData().length;
+            }
+            if (temp != null) {
+                out.flush();
+                ((FileOutputStream) out).getFD().sync();
+            }
+        } finally {
+            for (Future<SnapshotChunk> pending : window) {
+                pending.cancel(true);
+            }
+        }
+        if (total.getValue() != head.getTotalChecksum()) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IOException("Snapshot " + index + " does not match its checksum");
+        }
+        Snapshot snapshot;
+        byte[] bytes = null;
+        if (temp == null) {
+            bytes = memory.toByteArray();
+            snapshot = decode(new ByteArrayInputStream(bytes), size);
+        } else {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(temp))) {
+                snapshot = decode(in, size);
+            }
+            this.replaceFile(temp, index);
+        }
+        synchronized (this) {
+            this.latest = new Snapshot(index, snapshot.getLogStart(), snapshot.getTokens(), null, size, total.getValue());
+            this.latestBytes = bytes;
+        }
+        return new Snapshot(index, snapshot.getLogStart(), snapshot.getTokens(), snapshot.getData(), size, total.getValue());
+    }
+
+    /**
+     * @return The latest snapshot without its data, null before the first one.
+     */
+    public Snapshot getLatest() {
+        return latest;
+    }
+
+    private SnapshotChunk await(Future<SnapshotChunk> future, long timeout) throws IOException {
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (Exception e) {
+            throw new IOException("Snapshot chunk could not be fetched", e);
+        }
+    }
+
+    private boolean intact(SnapshotChunk chunk, long offset) {
+        CRC32 checksum = new CRC32();
+        checksum.update(chunk.getData());
+        return chunk.getOffset() == offset && checksum.getValue() == chunk.getChecksum();
+    }
+
+    /**
+     * Serializes a snapshot to a file or to memory and makes it the latest one. A file is written
+     * to a temporary name, forced to disk and renamed, so a crash leaves either the old or the new one.
+     *
+     * @param snapshot Snapshot with its data.
+     * @return The snapshot without its data.
+     * @throws IOException if the file could not be written.
+     */
+    private Snapshot keep(Snapshot snapshot) throws IOException {
+        CheckedOutputStream out;
+        long size;
+        byte[] bytes = null;
+        if (this.directory == null) {
+            ByteArrayOutputStream memory = new ByteArrayOutputStream();
+            out = new CheckedOutputStream(memory, new CRC32());
+            encode(snapshot, out);
+            bytes = memory.toByteArray();
+            size = bytes.length;
+        } else {
+            File temp = new File(this.directory, SNAPSHOT_PREFIX + snapshot.getIndex() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                out = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+                encode(snapshot, out);
+                file.getFD().sync();
+            }
+            size = temp.length();
+            this.replaceFile(temp, snapshot.getIndex());
+        }
+        Snapshot kept = new Snapshot(snapshot.getIndex(), snapshot.getLogStart(), snapshot.getTokens(), null, size, out.getChecksum().getValue());
+        synchronized (this) {
+            this.latest = kept;
+            this.latestBytes = bytes;
+        }
+        return kept;
+    }
+
+    /**
+     * Renames a completely written snapshot file to its final name and deletes older snapshot files.
+     */
+    private void replaceFile(File temp, long index) throws IOException {
+        File target = this.fileFor(index);
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(SNAPSHOT_PREFIX) && !name.equals(target.getName()));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void encode(Snapshot snapshot, OutputStream stream) throws IOException {
+        ObjectOutputStream out = new ObjectOutputStream(stream);
+        out.writeLong(snapshot.getIndex());
+        out.writeLong(snapshot.getLogStart());
+        out.writeObject(snapshot.getTokens());
+        out.writeObject(snapshot.getData());
+        out.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Snapshot decode(InputStream stream, long size) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(stream);
+        try {
+            long index = in.readLong();
+            long logStart = in.readLong();
+            TreeMap<Long, Integer> tokens = (TreeMap<Long, Integer>) in.readObject();
+            Map<String, Object> data = (Map<String, Object>) in.readObject();
+            // Read to the end so a checksum over the stream covers every byte
+            while (in.read() >= 0) {
+            }
+            return new Snapshot(index, logStart, tokens, data, size, 0);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private File fileFor(long index) {
+        return new File(this.directory, String.format("%s%020d%s", SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX));
+    }
+
+    private File latestFile() {
+        File[] files = this.directory == null ? null : this.directory.listFiles((dir, name) -> name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        File latest = files[0];
+        for (File file : files) {
+            // Indexes are zero padded, so names sort like indexes
+            if (file.getName().compareTo(latest.getName()) > 0) {
+                latest = file;
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,384 @@
+package com.project.four.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * WriteAheadLog appends typed records to numbered segment files in a directory. Every record is
+ * framed by its length and a CRC32 of its content, so replay stops at a record that was only partly
+ * written before a crash and drops everything after it.
+ * Appending only buffers the record. A caller that needs the record on disk waits for it with
+ * {@link #sync(long)}: the first waiter writes every buffered record and forces the segment to disk
+ * once, while the records of callers arriving in the meantime collect for the next flush. Concurrent
+ * callers therefore share one fsync (group commit).
+ * A segment is closed once it reaches the configured size and writing continues in the next one.
+ * After a restart the log continues in a new segment.
+ * Once the state described by old records was written again, the segments holding only those
+ * records are deleted with {@link #deleteThrough(long)}.
+ * Segments are read through memory mappings. Replay hands every record to its handler as a slice of
+ * the mapped segment, and records appended with a key can be read back by key through an offset
+ * index, both without copying the record onto the heap first.
+ */
+public class WriteAheadLog {
+    /**
+     * Handles one record during replay.
+     */
+    public interface RecordHandler {
+        void handle(byte type, ByteBuffer payload) throws IOException;
+    }
+
+    // Length and CRC32 in front of every record
+    private static final int HEADER_SIZE = 8;
+    // Type and key at the start of every record
+    private static final int PREFIX_SIZE = 9;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final File directory;
+    private final long segmentSize;
+    private FileChannel segment = null;
+    private long segmentIndex = 0;
+    private long segmentBytes = 0;
+    // Records appended but not written yet
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSeq = 0;
+    private long durableSeq = 0;
+    private boolean flushing = false;
+    // Keys and offsets of the buffered records appended with a key
+    private List<long[]> pendingKeys = new ArrayList<long[]>();
+    // Position of the last record appended with each key, segment index in the upper 32 bits
+    private final ConcurrentSkipListMap<Long, Long> offsets = new ConcurrentSkipListMap<Long, Long>();
+    // Read mappings of the segments, remapped when a segment grew past its mapping
+    private final Map<Long, MappedByteBuffer> mappings = new HashMap<Long, MappedByteBuffer>();
+    // Sequence number of the last record written to each segment since the start
+    private final ConcurrentSkipListMap<Long, Long> segmentSeqs = new ConcurrentSkipListMap<Long, Long>();
+
+    /**
+     * @param directory   Directory holding the segments, created if missing.
+     * @param segmentSize Size in bytes after which a new segment is started.
+     * @throws IOException if the directory can not be created.
+     */
+    public WriteAheadLog(File directory, long segmentSize) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create write-ahead log directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = Math.min(Integer.MAX_VALUE, Math.max(HEADER_SIZE + PREFIX_SIZE, segmentSize));
+    }
+
+    /**
+     * Reads every intact record in the order it was written. A torn record at the end of a segment
+     * is cut off together with everything after it.
+     *
+     * @param handler Handler called for every record.
+     * @throws IOException if a segment can not be read or the handler fails.
+     */
+    public synchronized void replay(RecordHandler handler) throws IOException {
+        for (File file : this.segments()) {
+            long index = this.indexOf(file);
+            this.segmentIndex = Math.max(this.segmentIndex, index + 1);
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(Integer.MAX_VALUE, channel.size()));
+                int valid = 0;
+                while (buffer.limit() - valid >= HEADER_SIZE + PREFIX_SIZE) {
+                    int length = buffer.getInt(valid);
+                    int crc = buffer.getInt(valid + 4);
+                    int start = valid + HEADER_SIZE;
+                    if (length < PREFIX_SIZE || length > buffer.limit() - start) {
+                        break;
+                    }
+                    CRC32 checksum = new CRC32();
+                    checksum.update(buffer.slice(start, length));
+                    if ((int) checksum.getValue() != crc) {
+                        break;
+                    }
+                    long key = buffer.getLong(start + 1);
+                    if (key >= 0) {
+                        this.offsets.put(key, (index << 32) | valid);
+                    }
+                    valid = start + length;
+                    handler.handle(buffer.get(start), buffer.slice(start + PREFIX_SIZE, length - PREFIX_SIZE).asReadOnlyBuffer());
+                }
+                if (valid < channel.size()) {
+                    // Torn write of the last flush before a crash
+                    channel.truncate(valid);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Buffers a record. The record is on disk once {@link #sync(long)} returned for its sequence number.
+     *
+     * @param type    Type of the record.
+     * @param payload Content of the record.
+     * @return Sequence number of the record.
+     */
+    public synchronized long append(byte type, byte[] payload) {
+        return this.append(type, -1, payload);
+    }
+
+    /**
+     * Buffers a record that can be read back by its key with {@link #read(long)} once it is on disk.
+     * A later record with the same key replaces the earlier one in the index.
+     *
+     * @param type    Type of the record.
+     * @param key     Key of the record, -1 for a record that is not indexed.
+     * @param payload Content of the record.
+     * @return Sequence number of the record.
+     */
+    public synchronized long append(byte type, long key, byte[] payload) {
+        byte[] content = ByteBuffer.allocate(PREFIX_SIZE + payload.length).put(type).putLong(key).put(payload).array();
+        if (key >= 0) {
+            this.pendingKeys.add(new long[]{key, this.pending.size()});
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(content);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(content.length);
+        header.putInt((int) checksum.getValue());
+        this.pending.write(header.array(), 0, HEADER_SIZE);
+        this.pending.write(content, 0, content.length);
+        return ++this.appendedSeq;
+    }
+
+    /**
+     * Waits until the record with the given sequence number and every record before it are on disk.
+     *
+     * @param seq Sequence number returned by {@link #append(byte, byte[])}.
+     * @throws IOException if writing or forcing the segment failed.
+     */
+    public void sync(long seq) throws IOException {
+        while (true) {
+            byte[] batch;
+            List<long[]> keys;
+            long upTo;
+            synchronized (this) {
+                try {
+                    while (this.durableSeq < seq && this.flushing) {
+                        this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the write-ahead log");
+                }
+                if (this.durableSeq >= seq) {
+                    return;
+                }
+                // This caller flushes for everybody waiting
+                this.flushing = true;
+                batch = this.pending.toByteArray();
+                keys = this.pendingKeys;
+                upTo = this.appendedSeq;
+                this.pending = new ByteArrayOutputStream();
+                this.pendingKeys = new ArrayList<long[]>();
+            }
+            IOException failure = null;
+            try {
+                this.write(batch, keys, upTo);
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (this) {
+                this.flushing = false;
+                if (failure == null) {
+                    this.durableSeq = Math.max(this.durableSeq, upTo);
+                }
+                this.notifyAll();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Reads the last record appended with a key from the mapped segment holding it.
+     *
+     * @param key Key the record was appended with.
+     * @return Read-only view of the record's payload, or null if no record with the key is on disk.
+     * @throws IOException if the segment can not be mapped.
+     */
+    public ByteBuffer read(long key) throws IOException {
+        Long position = this.offsets.get(key);
+        if (position == null) {
+            return null;
+        }
+        int offset = (int) (long) position;
+        ByteBuffer segment = this.mapping(position >>> 32, offset + HEADER_SIZE);
+        int length = segment.getInt(offset);
+        segment = this.mapping(position >>> 32, offset + HEADER_SIZE + length);
+        return segment.slice(offset + HEADER_SIZE + PREFIX_SIZE, length - PREFIX_SIZE).asReadOnlyBuffer();
+    }
+
+    /**
+     * Wraps a payload in a stream for decoders that read streams.
+     *
+     * @param payload Payload passed to a {@link RecordHandler} or returned by {@link #read(long)}.
+     * @return Stream reading the remaining bytes of the payload.
+     */
+    public static InputStream inputStream(ByteBuffer payload) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return payload.hasRemaining() ? payload.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) {
+                if (!payload.hasRemaining()) {
+                    return -1;
+                }
+                int count = Math.min(length, payload.remaining());
+                payload.get(bytes, offset, count);
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Returns a read mapping of a segment covering at least the given number of bytes.
+     *
+     * @param index Index of the segment.
+     * @param size  Number of bytes from the start of the segment that have to be mapped.
+     * @return Mapping of the segment.
+     * @throws IOException if the segment can not be mapped.
+     */
+    private MappedByteBuffer mapping(long index, int size) throws IOException {
+        synchronized (this.mappings) {
+            MappedByteBuffer mapping = this.mappings.get(index);
+            if (mapping == null || mapping.capacity() < size) {
+                try (FileChannel channel = FileChannel.open(this.segmentFile(index).toPath(), StandardOpenOption.READ)) {
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(Integer.MAX_VALUE, channel.size()));
+                }
+                if (mapping.capacity() < size) {
+                    throw new IOException("Write-ahead log segment " + index + " is shorter than its index");
+                }
+                this.mappings.put(index, mapping);
+            }
+            return mapping;
+        }
+    }
+
+    /**
+     * @return Sequence number of the last record appended so far.
+     */
+    public synchronized long mark() {
+        return this.appendedSeq;
+    }
+
+    /**
+     * Deletes every closed segment whose records all have a sequence number up to the given one.
+     * Segments written before a restart count as older than every record appended since.
+     *
+     * @param seq Sequence number returned by {@link #mark()}.
+     */
+    public void deleteThrough(long seq) {
+        long active;
+        synchronized (this) {
+            active = this.segmentIndex - 1;
+        }
+        for (File file : this.segments()) {
+            long index = this.indexOf(file);
+            if (index >= active || this.segmentSeqs.getOrDefault(index, 0L) > seq) {
+                continue;
+            }
+            synchronized (this.mappings) {
+                this.mappings.remove(index);
+            }
+            this.offsets.values().removeIf(position -> (position >>> 32) == index);
+            this.segmentSeqs.remove(index);
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes buffered records and closes the current segment.
+     *
+     * @throws IOException if the records could not be written.
+     */
+    public void close() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = this.appendedSeq;
+        }
+        this.sync(seq);
+        synchronized (this) {
+            if (this.segment != null) {
+                this.segment.close();
+                this.segment = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of records to the current segment and forces it to disk, starting a new
+     * segment first if the current one is full. Only the flushing caller gets here.
+     *
+     * @param batch Framed records.
+     * @param keys  Keys of the indexed records in the batch and their offsets within the batch.
+     * @param upTo  Sequence number of the last record in the batch.
+     * @throws IOException if writing failed.
+     */
+    private void write(byte[] batch, List<long[]> keys, long upTo) throws IOException {
+        if (batch.length == 0) {
+            return;
+        }
+        if (this.segment != null && this.segmentBytes + batch.length > this.segmentSize) {
+            this.segment.close();
+            this.segment = null;
+        }
+        if (this.segment == null) {
+            this.segment = FileChannel.open(this.segmentFile(this.segmentIndex++).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.segmentBytes = this.segment.size();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            this.segment.write(buffer);
+        }
+        this.segment.force(false);
+        // Index the records only once they can be read
+        long base = ((this.segmentIndex - 1) << 32) | this.segmentBytes;
+        this.segmentSeqs.put(this.segmentIndex - 1, upTo);
+        for (long[] key : keys) {
+            this.offsets.put(key[0], base + key[1]);
+        }
+        this.segmentBytes += batch.length;
+    }
+
+    private File segmentFile(long index) {
+        return new File(this.directory, String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Lists the segment files in the order they were written.
+     *
+     * @return Segment files sorted by index.
+     */
+    private List<File> segments() {
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        List<File> segments = new ArrayList<File>(files == null ? List.of() : Arrays.asList(files));
+        segments.sort((first, second) -> Long.compare(this.indexOf(first), this.indexOf(second)));
+        return segments;
+    }
+
+    private long indexOf(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -14,6 +14,168 @@ public class ArchConf {
     private int requestAttempts = 5;
     private long delay = 0;
     private boolean allowNodeRestart = false;
+    private boolean multiPaxos = false;
+    private int batchSize = 1;
+    private long batchDelay = 5;
+    private int pipelineWindow = 1;
+    private boolean chosenNotify = false;
+    private long leaseDuration = 0;
+    private int prepareQuorum = 0;
+    private int acceptQuorum = 0;
+    private boolean thriftyAccept = false;
+    private boolean leaderlessCommit = false;
+    private boolean rotatingSlots = false;
+    private int groups = 1;
+    private String walDirectory = "";
+    private long walSegmentSize = 67108864;
+    private long snapshotInterval = 0;
+    private long antiEntropyInterval = 0;
+    private long heartbeatInterval = 100;
+    private double suspicionThreshold = 8.0;
+
+    public boolean isChosenNotify() {
+        return chosenNotify;
+    }
+
+    public void setChosenNotify(boolean chosenNotify) {
+        this.chosenNotify = chosenNotify;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(long leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    public int getPrepareQuorum() {
+        return prepareQuorum;
+    }
+
+    public void setPrepareQuorum(int prepareQuorum) {
+        this.prepareQuorum = prepareQuorum;
+    }
+
+    public int getAcceptQuorum() {
+        return acceptQuorum;
+    }
+
+    public void setAcceptQuorum(int acceptQuorum) {
+        this.acceptQuorum = acceptQuorum;
+    }
+
+    public boolean isThriftyAccept() {
+        return thriftyAccept;
+    }
+
+    public void setThriftyAccept(boolean thriftyAccept) {
+        this.thriftyAccept = thriftyAccept;
+    }
+
+    public boolean isLeaderlessCommit() {
+        return leaderlessCommit;
+    }
+
+    public void setLeaderlessCommit(boolean leaderlessCommit) {
+        this.leaderlessCommit = leaderlessCommit;
+    }
+
+    public boolean isRotatingSlots() {
+        return rotatingSlots;
+    }
+
+    public void setRotatingSlots(boolean rotatingSlots) {
+        this.rotatingSlots = rotatingSlots;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public void setGroups(int groups) {
+        this.groups = groups;
+    }
+
+    public String getWalDirectory() {
+        return walDirectory;
+    }
+
+    public void setWalDirectory(String walDirectory) {
+        this.walDirectory = walDirectory;
+    }
+
+    public long getWalSegmentSize() {
+        return walSegmentSize;
+    }
+
+    public void setWalSegmentSize(long walSegmentSize) {
+        this.walSegmentSize = walSegmentSize;
+    }
+
+    public long getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public long getAntiEntropyInterval() {
+        return antiEntropyInterval;
+    }
+
+    public void setAntiEntropyInterval(long antiEntropyInterval) {
+        this.antiEntropyInterval = antiEntropyInterval;
+    }
+
+    public long getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public double getSuspicionThreshold() {
+        return suspicionThreshold;
+    }
+
+    public void setSuspicionThreshold(double suspicionThreshold) {
+        this.suspicionThreshold = suspicionThreshold;
+    }
+
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+
+    public void setPipelineWindow(int pipelineWindow) {
+        this.pipelineWindow = pipelineWindow;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchDelay() {
+        return batchDelay;
+    }
+
+    public void setBatchDelay(long batchDelay) {
+        this.batchDelay = batchDelay;
+    }
+
+    public boolean isMultiPaxos() {
+        return multiPaxos;
+    }
+
+    public void setMultiPaxos(boolean multiPaxos) {
+        this.multiPaxos = multiPaxos;
+    }
 
     public boolean isAllowNodeRestart() {
         return allowNodeRestart;
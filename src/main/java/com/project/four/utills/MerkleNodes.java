@@ -0,0 +1,30 @@
+package com.project.four.utills;
+
+import java.io.Serializable;
+
+/**
+ * Represents hashes of Merkle tree nodes read from a replica for anti-entropy.
+ * The hashes are tagged with the replica's applied index, since two replicas that applied a
+ * different number of log slots are expected to differ.
+ */
+public class MerkleNodes implements Serializable {
+    long appliedIndex;
+    long[] hashes;
+
+    /**
+     * @param appliedIndex Applied index of the replica when the hashes were read.
+     * @param hashes       Hashes of the requested nodes, in the requested order.
+     */
+    public MerkleNodes(long appliedIndex, long[] hashes) {
+        this.appliedIndex = appliedIndex;
+        this.hashes = hashes;
+    }
+
+    public long getAppliedIndex() {
+        return appliedIndex;
+    }
+
+    public long[] getHashes() {
+        return hashes;
+    }
+}
@@ -4,10 +4,12 @@ import com.google.common.base.Objects;
 import com.project.four.server.ProjectEnums.MethodType;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Represents an operation to be executed in the Paxos algorithm.
  * Each operation consists of a type, key, value, authentication ID, and a proposal ID.
+ * Operations that belong to the replicated log also carry the log slot they were accepted in.
  */
 public class Operation implements Serializable {
     MethodType type;
@@ -15,26 +17,22 @@ public class Operation implements Serializable {
     Object value;
     String authId;
     long proposalId;
+    long slot = -1;
 
     @Override
     public int hashCode () {
-        return Objects.hashCode(key, (String)value);
+        return Arrays.deepHashCode(new Object[]{key, value});
     }
 
     @Override
     public boolean equals (Object ops) {
-        try {
-            Operation temp = (Operation) ops;
-            String currentValue = (String) this.value;
-            String newValue = (String) temp.value;
-            if (this.key.equals(temp.key) && currentValue.equals(newValue)) {
-                return true;
-            } else {
-                return false;
-            }
-        } catch (Exception e) {
+        if (!(ops instanceof Operation)) {
             return false;
         }
+        Operation temp = (Operation) ops;
+        // Values are compared with equals so batch values (lists of operations) match as well, and
+        // array values (RANGE positions) by content since they arrive deserialized
+        return Objects.equal(this.key, temp.key) && Arrays.deepEquals(new Object[]{this.value}, new Object[]{temp.value});
     }
 
     /**
@@ -113,4 +111,12 @@ public class Operation implements Serializable {
     public void setProposalId(long proposalId) {
         this.proposalId = proposalId;
     }
+
+    public long getSlot() {
+        return slot;
+    }
+
+    public void setSlot(long slot) {
+        this.slot = slot;
+    }
 }
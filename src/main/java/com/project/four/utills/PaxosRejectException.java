@@ -0,0 +1,23 @@
+package com.project.four.utills;
+
+/**
+ * Thrown by an acceptor that rejects a prepare or accept request because it already promised a
+ * higher ballot. The promised ballot is sent back so the proposer can jump past it instead of
+ * retrying with ballots that are bound to fail.
+ */
+public class PaxosRejectException extends RemoteBusinessException {
+
+	private static final long serialVersionUID = 3150618815043712405L;
+
+	private long promisedBallot = -1;
+	public PaxosRejectException(String message, long promisedBallot) {
+		super(message);
+		this.promisedBallot = promisedBallot;
+	}
+	public long getPromisedBallot() {
+		return promisedBallot;
+	}
+	public void setPromisedBallot(long promisedBallot) {
+		this.promisedBallot = promisedBallot;
+	}
+}
@@ -0,0 +1,50 @@
+package com.project.four.utills;
+
+/**
+ * Thrown by a Paxos group that does not own the requested key, or by a replica that can not run an
+ * operation that only the group's leader may run. Carries a hint where to send the request instead.
+ */
+public class RedirectException extends RemoteBusinessException {
+
+	private static final long serialVersionUID = 6203458135270913384L;
+
+	private int groupId = -1;
+	private int serverId = -1;
+	public RedirectException(String message, int groupId, int serverId) {
+		super(message);
+		this.groupId = groupId;
+		this.serverId = serverId;
+	}
+	public int getGroupId() {
+		return groupId;
+	}
+	public void setGroupId(int groupId) {
+		this.groupId = groupId;
+	}
+	public int getServerId() {
+		return serverId;
+	}
+	public void setServerId(int serverId) {
+		this.serverId = serverId;
+	}
+
+	/**
+	 * Finds a redirect in a failure, which may arrive wrapped in RMI exceptions.
+	 *
+	 * @param failure Failure of a call.
+	 * @return The redirect or null if the failure was not a redirect.
+	 */
+	public static RedirectException find(Throwable failure) {
+		Throwable cause = failure;
+		while (cause != null) {
+			if (cause instanceof RedirectException) {
+				return (RedirectException) cause;
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+			cause = cause.getCause();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,65 @@
+package com.project.four.utills;
+
+import java.io.Serializable;
+
+/**
+ * Represents a chunk of a serialized snapshot streamed to a node that is catching up.
+ * Every chunk carries a checksum of its own bytes and a description of the whole snapshot, so the
+ * receiver can verify each chunk as well as the assembled snapshot.
+ */
+public class SnapshotChunk implements Serializable {
+    long index;
+    long logStart;
+    long totalSize;
+    long totalChecksum;
+    long offset;
+    byte[] data;
+    long checksum;
+
+    /**
+     * @param index         Applied index the snapshot covers.
+     * @param logStart      Highest slot the sender dropped from its log.
+     * @param totalSize     Size of the serialized snapshot in bytes.
+     * @param totalChecksum CRC32 of the serialized snapshot.
+     * @param offset        Position of the chunk in the serialized snapshot.
+     * @param data          Bytes of the chunk.
+     * @param checksum      CRC32 of the chunk's bytes.
+     */
+    public SnapshotChunk(long index, long logStart, long totalSize, long totalChecksum, long offset, byte[] data, long checksum) {
+        this.index = index;
+        this.logStart = logStart;
+        this.totalSize = totalSize;
+        this.totalChecksum = totalChecksum;
+        this.offset = offset;
+        this.data = data;
+        this.checksum = checksum;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public long getLogStart() {
+        return logStart;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getTotalChecksum() {
+        return totalChecksum;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+}
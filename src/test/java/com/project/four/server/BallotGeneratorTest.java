@@ -0,0 +1,58 @@
+package com.project.four.server;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for ballots packed from a round counter and the node id.
+ */
+public class BallotGeneratorTest extends TestCase {
+
+    public void testPackRoundTrips() {
+        long ballot = BallotGenerator.pack(12345, 7);
+        assertEquals(12345, BallotGenerator.round(ballot));
+        assertEquals(7, BallotGenerator.nodeId(ballot));
+    }
+
+    public void testBallotsOfDifferentNodesNeverCollide() {
+        BallotGenerator first = new BallotGenerator(1);
+        BallotGenerator second = new BallotGenerator(2);
+        long a = first.next();
+        long b = second.next();
+        assertFalse(a == b);
+        // Same round, the node id breaks the tie
+        assertTrue(b > a);
+    }
+
+    public void testNextStrictlyIncreases() {
+        BallotGenerator generator = new BallotGenerator(3);
+        long previous = generator.next();
+        for (int index = 0; index < 1000; index++) {
+            long next = generator.next();
+            assertTrue(next > previous);
+            previous = next;
+        }
+    }
+
+    /**
+     * A proposer rejected by a higher ballot jumps past it with its next ballot.
+     */
+    public void testObserveMovesPastRejectingBallot() {
+        BallotGenerator generator = new BallotGenerator(1);
+        long rejecting = BallotGenerator.pack(500, 9);
+        generator.observe(rejecting);
+        assertTrue(generator.next() > rejecting);
+        // Lower and missing ballots leave the generator alone
+        generator.observe(BallotGenerator.pack(3, 2));
+        generator.observe(-1);
+        assertEquals(502, BallotGenerator.round(generator.next()));
+    }
+
+    public void testRejectsNodeIdsThatDoNotFit() {
+        try {
+            new BallotGenerator(1 << BallotGenerator.NODE_BITS);
+            fail("Node id accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import com.project.four.utills.RemoteBusinessException;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for collecting concurrent commands into batches.
+ */
+public class CommandBatcherTest extends TestCase {
+    private ExecutorService executor;
+    private final List<Operation> proposed = Collections.synchronizedList(new ArrayList<Operation>());
+    // Proposals wait for this latch, so that commands pile up behind the batch in flight
+    private final CountDownLatch proceed = new CountDownLatch(1);
+
+    @Override
+    protected void setUp() {
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.proceed.countDown();
+        this.executor.shutdownNow();
+    }
+
+    private CommandBatcher batcher(long commitTimeout) {
+        return new CommandBatcher(batch -> {
+            this.proposed.add(batch);
+            try {
+                this.proceed.await();
+            } catch (InterruptedException e) {
+                throw new RemoteBusinessException("Interrupted");
+            }
+        }, 16, 5, this.executor, 1, commitTimeout);
+    }
+
+    private Future<?> submit(CommandBatcher batcher, String key) {
+        return this.executor.submit(() -> {
+            batcher.submit(new Operation(MethodType.PUT, key, "v", "c"));
+            return null;
+        });
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, list.size());
+    }
+
+    /**
+     * Commands submitted while a batch is committed are proposed together in the next batch.
+     */
+    @SuppressWarnings("unchecked")
+    public void testCommandsWaitingForPipelineShareBatch() throws Exception {
+        CommandBatcher batcher = this.batcher(5000);
+        this.executor.submit(batcher);
+        Future<?> first = this.submit(batcher, "a");
+        awaitSize(this.proposed, 1);
+        List<Future<?>> later = new ArrayList<Future<?>>();
+        for (String key : new String[]{"b", "c", "d"}) {
+            later.add(this.submit(batcher, key));
+        }
+        Thread.sleep(50);
+        this.proceed.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<?> future : later) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(2, this.proposed.size());
+        Operation batch = this.proposed.get(1);
+        assertEquals(MethodType.BATCH, batch.getType());
+        assertEquals(3, ((List<Operation>) batch.getValue()).size());
+    }
+
+    /**
+     * Stopping the flush loop fails the commands still waiting instead of leaving their callers blocked.
+     */
+    public void testStopFailsPendingCommands() throws Exception {
+        CommandBatcher batcher = this.batcher(0);
+        Future<?> loop = this.executor.submit(batcher);
+        this.submit(batcher, "a");
+        awaitSize(this.proposed, 1);
+        Future<?> pending = this.submit(batcher, "b");
+        Thread.sleep(50);
+        loop.cancel(true);
+        try {
+            pending.get(5, TimeUnit.SECONDS);
+            fail("Pending command committed after the stop");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RemoteBusinessException);
+        }
+        try {
+            batcher.submit(new Operation(MethodType.PUT, "c", "v", "c"));
+            fail("Command accepted after the stop");
+        } catch (RemoteBusinessException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * A caller that gives up waiting takes its command back, it is not committed later.
+     */
+    public void testTimedOutCommandIsWithdrawn() throws Exception {
+        CommandBatcher batcher = this.batcher(100);
+        try {
+            batcher.submit(new Operation(MethodType.PUT, "a", "v", "c"));
+            fail("Command committed without flush loop");
+        } catch (RemoteBusinessException e) {
+            // Expected
+        }
+        this.proceed.countDown();
+        this.executor.submit(batcher);
+        batcher.submit(new Operation(MethodType.PUT, "b", "v", "c"));
+        assertEquals(1, this.proposed.size());
+        assertEquals("b", this.proposed.get(0).getKey());
+    }
+}
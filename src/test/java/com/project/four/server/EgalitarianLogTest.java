@@ -0,0 +1,117 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for the pre-accept phase of the leaderless commit path.
+ */
+public class EgalitarianLogTest extends TestCase {
+
+    private static List<EgalitarianLog> replicas(int count) {
+        List<EgalitarianLog> replicas = new ArrayList<EgalitarianLog>();
+        for (int id = 0; id < count; id++) {
+            replicas.add(new EgalitarianLog(id, command -> { }));
+        }
+        return replicas;
+    }
+
+    /**
+     * Every replica, the proposer included, has to answer a conflict-free command with the
+     * proposer's attributes, which is the condition for committing on the fast path.
+     */
+    public void testConflictFreeCommandTakesFastPath() throws Exception {
+        List<EgalitarianLog> replicas = replicas(3);
+        EgalitarianInstance proposal = replicas.get(0).propose(new Operation(MethodType.PUT, "a", "1", "c"));
+        for (EgalitarianLog replica : replicas) {
+            EgalitarianInstance reply = replica.preAccept(proposal.copy());
+            assertTrue("seq " + reply.getSeq() + " deps " + reply.getDeps(), reply.sameAttributes(proposal));
+        }
+    }
+
+    /**
+     * A replica that knows a conflicting command adds it, so the slow path is taken.
+     */
+    public void testConflictingCommandLeavesFastPath() throws Exception {
+        List<EgalitarianLog> replicas = replicas(3);
+        EgalitarianInstance earlier = replicas.get(1).propose(new Operation(MethodType.PUT, "a", "1", "c"));
+        EgalitarianInstance proposal = replicas.get(0).propose(new Operation(MethodType.PUT, "a", "2", "c"));
+        EgalitarianInstance reply = replicas.get(1).preAccept(proposal.copy());
+        assertFalse(reply.sameAttributes(proposal));
+        assertTrue(reply.getDeps().contains(earlier.getId()));
+    }
+
+    private static void commitEverywhere(List<EgalitarianLog> replicas, EgalitarianInstance instance) {
+        for (EgalitarianLog replica : replicas) {
+            replica.commit(instance.copy());
+        }
+    }
+
+    private static Map<Integer, Long> executedEverywhere(List<EgalitarianLog> replicas) {
+        Map<Integer, Long> everywhere = new HashMap<Integer, Long>(replicas.get(0).getExecutedThrough());
+        for (EgalitarianLog replica : replicas) {
+            Map<Integer, Long> executed = replica.getExecutedThrough();
+            everywhere.replaceAll((owner, through) -> Math.min(through, executed.getOrDefault(owner, -1L)));
+        }
+        return everywhere;
+    }
+
+    /**
+     * Instances executed by every replica are dropped, and later commands on their keys neither
+     * depend on them nor wait for them.
+     */
+    public void testTruncateDropsInstancesExecutedEverywhere() throws Exception {
+        List<Operation> applied = new ArrayList<Operation>();
+        List<EgalitarianLog> replicas = replicas(3);
+        replicas.set(1, new EgalitarianLog(1, applied::add));
+        for (int round = 0; round < 10; round++) {
+            commitEverywhere(replicas, replicas.get(0).propose(new Operation(MethodType.PUT, "a", "v" + round, "c")));
+        }
+        assertEquals(Long.valueOf(9), executedEverywhere(replicas).get(0));
+        for (EgalitarianLog replica : replicas) {
+            replica.truncate(executedEverywhere(replicas));
+            assertEquals(0, replica.size());
+        }
+        EgalitarianInstance next = replicas.get(0).propose(new Operation(MethodType.PUT, "a", "last", "c"));
+        assertTrue(next.getDeps().isEmpty());
+        commitEverywhere(replicas, next);
+        assertEquals(11, applied.size());
+        assertTrue(replicas.get(1).awaitExecuted(next.getId(), 1000));
+    }
+
+    /**
+     * A replica that did not execute an instance yet holds the truncation back on every replica.
+     */
+    public void testTruncateWaitsForLaggingReplica() throws Exception {
+        List<EgalitarianLog> replicas = replicas(3);
+        EgalitarianInstance first = replicas.get(0).propose(new Operation(MethodType.PUT, "a", "1", "c"));
+        replicas.get(0).commit(first.copy());
+        replicas.get(1).commit(first.copy());
+        Map<Integer, Long> everywhere = executedEverywhere(replicas);
+        assertEquals(Long.valueOf(-1), everywhere.get(0));
+        replicas.get(0).truncate(everywhere);
+        assertEquals(1, replicas.get(0).size());
+        // The late commit is still executed after the others truncated
+        replicas.get(2).commit(first.copy());
+        replicas.get(0).truncate(executedEverywhere(replicas));
+        assertEquals(0, replicas.get(0).size());
+    }
+
+    /**
+     * An instance missing below a later instance of the same replica is reported for recovery,
+     * otherwise it would hold back the executed watermark for good.
+     */
+    public void testMissingInstanceIsBlocking() throws Exception {
+        List<EgalitarianLog> replicas = replicas(2);
+        replicas.get(0).propose(new Operation(MethodType.PUT, "a", "1", "c"));
+        EgalitarianInstance second = replicas.get(0).propose(new Operation(MethodType.PUT, "b", "2", "c"));
+        replicas.get(1).commit(second.copy());
+        assertEquals(List.of(BallotGenerator.pack(0, 0)), replicas.get(1).blockingInstances(0));
+    }
+}
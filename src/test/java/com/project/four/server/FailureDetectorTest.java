@@ -0,0 +1,90 @@
+package com.project.four.server;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for the phi-accrual failure detector, with heartbeats every 20 milliseconds.
+ */
+public class FailureDetectorTest extends TestCase {
+    private static final long INTERVAL = 20;
+
+    private final List<Integer> suspected = Collections.synchronizedList(new ArrayList<Integer>());
+    private final List<Integer> alive = Collections.synchronizedList(new ArrayList<Integer>());
+    private final FailureDetector detector = new FailureDetector(INTERVAL, 8, new FailureDetector.Listener() {
+        @Override
+        public void suspected(int nodeId, double phi) {
+            assertTrue(phi >= 8);
+            FailureDetectorTest.this.suspected.add(nodeId);
+        }
+
+        @Override
+        public void alive(int nodeId) {
+            FailureDetectorTest.this.alive.add(nodeId);
+        }
+    });
+
+    /**
+     * Checks the detector until the node is suspected or the time is up.
+     */
+    private void checkFor(long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < deadline) {
+            this.detector.check();
+            Thread.sleep(5);
+        }
+    }
+
+    public void testSilentNodeIsSuspectedOnce() throws Exception {
+        this.detector.watch(1);
+        this.detector.check();
+        assertFalse(this.detector.isSuspected(1));
+        this.checkFor(300);
+        assertTrue(this.detector.isSuspected(1));
+        assertEquals(List.of(1), this.suspected);
+    }
+
+    public void testRegularHeartbeatsKeepNodeAlive() throws Exception {
+        this.detector.watch(1);
+        long deadline = System.currentTimeMillis() + 300;
+        while (System.currentTimeMillis() < deadline) {
+            this.detector.heartbeat(1);
+            this.detector.check();
+            Thread.sleep(INTERVAL / 2);
+        }
+        assertFalse(this.detector.isSuspected(1));
+        assertTrue(this.suspected.isEmpty());
+    }
+
+    /**
+     * A heartbeat of a suspected node reports it alive, and the outage does not count as one of its
+     * intervals: the node is suspected again as quickly as before.
+     */
+    public void testHeartbeatRevivesNodeWithFreshHistory() throws Exception {
+        this.detector.watch(1);
+        this.checkFor(300);
+        assertTrue(this.detector.isSuspected(1));
+        this.detector.heartbeat(1);
+        assertFalse(this.detector.isSuspected(1));
+        assertEquals(List.of(1), this.alive);
+        this.detector.check();
+        assertFalse(this.detector.isSuspected(1));
+        this.checkFor(200);
+        assertTrue(this.detector.isSuspected(1));
+        assertEquals(List.of(1, 1), this.suspected);
+    }
+
+    public void testHeartbeatStartsWatchingUnknownNode() throws Exception {
+        assertFalse(this.detector.isSuspected(2));
+        this.detector.heartbeat(2);
+        this.checkFor(300);
+        assertTrue(this.detector.isSuspected(2));
+        // Watching a known node again does not reset it
+        this.detector.watch(2);
+        assertTrue(this.detector.isSuspected(2));
+        assertTrue(this.alive.isEmpty());
+    }
+}
@@ -0,0 +1,89 @@
+package com.project.four.server;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit tests for routing keys to groups on the consistent-hash ring.
+ */
+public class HashRingTest extends TestCase {
+    private static final int KEYS = 1000;
+
+    private static String key(int index) {
+        return "k" + index;
+    }
+
+    /**
+     * Every node builds the same ring, so a key goes to the same group everywhere.
+     */
+    public void testSameGroupsRouteKeysAlike() {
+        HashRing ring = new HashRing(3);
+        HashRing other = new HashRing(3);
+        Set<Integer> groups = new HashSet<Integer>();
+        for (int index = 0; index < KEYS; index++) {
+            assertEquals(ring.groupFor(key(index)), other.groupFor(key(index)));
+            groups.add(ring.groupFor(key(index)));
+        }
+        assertEquals(3, groups.size());
+    }
+
+    public void testSingleGroupOwnsWholeRing() {
+        HashRing ring = new HashRing(1);
+        assertEquals(0, ring.ownerOf(Long.MIN_VALUE));
+        assertEquals(0, ring.ownerOf(Long.MAX_VALUE));
+        assertEquals(0, ring.ownerOfRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Positions after the last token belong to the first token of the ring.
+     */
+    public void testOwnerWrapsAroundRing() {
+        HashRing ring = new HashRing(2);
+        long first = ring.tokenAtOrAfter(Long.MIN_VALUE);
+        assertEquals(first, ring.tokenAtOrAfter(Long.MAX_VALUE));
+        assertEquals(ring.ownerOf(first), ring.ownerOf(Long.MAX_VALUE));
+        assertEquals(-1, ring.ownerOfRange(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    public void testContainsExcludesStartOfRange() {
+        long position = HashRing.hash("k");
+        assertTrue(HashRing.contains(position - 1, position, "k"));
+        assertFalse(HashRing.contains(position, position + 1, "k"));
+    }
+
+    /**
+     * Assigning a range moves exactly the keys inside it, every other key keeps its group.
+     */
+    public void testAssignMovesOnlyKeysInRange() {
+        HashRing ring = new HashRing(2);
+        int target = 0;
+        while (ring.groupFor(key(target)) != 0 || HashRing.hash(key(target)) < 0) {
+            target++;
+        }
+        long toPosition = HashRing.hash(key(target));
+        long fromPosition = toPosition - (Long.MAX_VALUE >> 4);
+        int[] before = new int[KEYS];
+        for (int index = 0; index < KEYS; index++) {
+            before[index] = ring.groupFor(key(index));
+        }
+        ring.assign(fromPosition, toPosition, 1);
+        assertEquals(1, ring.ownerOfRange(fromPosition, toPosition));
+        assertEquals(1, ring.groupFor(key(target)));
+        for (int index = 0; index < KEYS; index++) {
+            int expected = HashRing.contains(fromPosition, toPosition, key(index)) ? 1 : before[index];
+            assertEquals(key(index), expected, ring.groupFor(key(index)));
+        }
+    }
+
+    public void testRestoreReproducesAssignments() {
+        HashRing ring = new HashRing(2);
+        ring.assign(0, Long.MAX_VALUE >> 2, 1);
+        HashRing restored = new HashRing(2);
+        restored.restore(ring.snapshot());
+        for (int index = 0; index < KEYS; index++) {
+            assertEquals(ring.groupFor(key(index)), restored.groupFor(key(index)));
+        }
+    }
+}
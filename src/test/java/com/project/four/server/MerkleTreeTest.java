@@ -0,0 +1,126 @@
+package com.project.four.server;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Unit tests for the Merkle tree summarizing a replica store.
+ */
+public class MerkleTreeTest extends TestCase {
+    private static final int[] ROOT = {1};
+
+    private static Map<String, Object> store(int keys) {
+        Map<String, Object> store = new LinkedHashMap<String, Object>();
+        for (int key = 0; key < keys; key++) {
+            store.put("k" + key, "v" + key);
+        }
+        return store;
+    }
+
+    private static MerkleTree tree(Map<String, Object> store) {
+        MerkleTree tree = new MerkleTree();
+        tree.rebuild(store);
+        return tree;
+    }
+
+    private static long root(MerkleTree tree) {
+        return tree.hashes(ROOT)[0];
+    }
+
+    /**
+     * Compares two trees top-down like anti-entropy does, descending only into differing subtrees.
+     *
+     * @return Buckets whose leaves differ.
+     */
+    private static Set<Integer> differingBuckets(MerkleTree first, MerkleTree second) {
+        Set<Integer> buckets = new TreeSet<Integer>();
+        Deque<Integer> nodes = new ArrayDeque<Integer>();
+        nodes.add(1);
+        while (!nodes.isEmpty()) {
+            int node = nodes.poll();
+            int[] ids = {node};
+            if (first.hashes(ids)[0] == second.hashes(ids)[0]) {
+                continue;
+            }
+            if (MerkleTree.isLeaf(node)) {
+                buckets.add(node - MerkleTree.BUCKETS);
+            } else {
+                nodes.add(2 * node);
+                nodes.add(2 * node + 1);
+            }
+        }
+        return buckets;
+    }
+
+    public void testSameEntriesGiveSameRoot() {
+        Map<String, Object> store = store(1000);
+        Map<String, Object> reversed = new LinkedHashMap<String, Object>();
+        for (int key = 999; key >= 0; key--) {
+            reversed.put("k" + key, "v" + key);
+        }
+        assertEquals(root(tree(store)), root(tree(reversed)));
+        assertEquals(root(new MerkleTree()), root(tree(new HashMap<String, Object>())));
+        assertFalse(root(tree(store)) == root(new MerkleTree()));
+    }
+
+    /**
+     * Incremental updates give the same tree as computing it from the resulting store.
+     */
+    public void testUpdatesMatchRebuild() {
+        Map<String, Object> store = store(500);
+        MerkleTree tree = tree(store);
+        for (int key = 0; key < 500; key += 7) {
+            tree.update("k" + key, store.get("k" + key), "changed" + key);
+            store.put("k" + key, "changed" + key);
+        }
+        for (int key = 500; key < 600; key++) {
+            tree.update("k" + key, null, "v" + key);
+            store.put("k" + key, "v" + key);
+        }
+        for (int key = 1; key < 500; key += 11) {
+            tree.update("k" + key, store.remove("k" + key), null);
+        }
+        assertEquals(root(tree(store)), root(tree));
+        assertTrue(differingBuckets(tree, tree(store)).isEmpty());
+    }
+
+    public void testDeleteRestoresRoot() {
+        MerkleTree tree = tree(store(100));
+        long before = root(tree);
+        tree.update("extra", null, "value");
+        assertFalse(before == root(tree));
+        tree.update("extra", "value", null);
+        assertEquals(before, root(tree));
+    }
+
+    /**
+     * A single differing entry is found in its bucket and nowhere else.
+     */
+    public void testComparisonFindsDifferingBucket() {
+        Map<String, Object> store = store(1000);
+        MerkleTree tree = tree(store);
+        Map<String, Object> other = new HashMap<String, Object>(store);
+        other.put("k42", "stale");
+        assertEquals(Set.of(MerkleTree.bucketOf("k42")), differingBuckets(tree, tree(other)));
+        other.put("k42", "v42");
+        other.remove("k7");
+        assertEquals(Set.of(MerkleTree.bucketOf("k7")), differingBuckets(tree, tree(other)));
+    }
+
+    public void testHashesFollowRequestedOrder() {
+        MerkleTree tree = tree(store(10));
+        int leaf = MerkleTree.BUCKETS + MerkleTree.bucketOf("k3");
+        long[] hashes = tree.hashes(new int[]{leaf, 1});
+        assertEquals(root(tree), hashes[1]);
+        assertFalse(hashes[0] == 0);
+        assertTrue(MerkleTree.isLeaf(leaf));
+        assertFalse(MerkleTree.isLeaf(MerkleTree.BUCKETS - 1));
+    }
+}
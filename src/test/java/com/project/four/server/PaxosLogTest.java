@@ -0,0 +1,235 @@
+package com.project.four.server;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import com.project.four.utills.Operation;
+import com.project.four.utills.RemoteBusinessException;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the replicated command log, without a write-ahead log.
+ */
+public class PaxosLogTest extends TestCase {
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() {
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    static Operation chosen(long slot, String key) {
+        Operation operation = new Operation(MethodType.PUT, key, "v", "c");
+        operation.setSlot(slot);
+        return operation;
+    }
+
+    private static void applyAll(PaxosLog log) {
+        while (log.pollApplicable() != null) {
+            // Nothing to apply to, the test only moves the applied index
+        }
+    }
+
+    public void testAppliesInSlotOrder() {
+        PaxosLog log = new PaxosLog();
+        log.choose(chosen(1, "b"));
+        assertNull(log.pollApplicable());
+        log.choose(chosen(0, "a"));
+        assertEquals("a", log.pollApplicable().getKey());
+        assertEquals("b", log.pollApplicable().getKey());
+        assertNull(log.pollApplicable());
+        assertEquals(1, log.getAppliedIndex());
+    }
+
+    /**
+     * A read index that is not applied in time is reported instead of waiting forever.
+     */
+    public void testAwaitAppliedTimesOut() throws Exception {
+        PaxosLog log = new PaxosLog();
+        log.choose(chosen(1, "b"));
+        long start = System.currentTimeMillis();
+        assertFalse(log.awaitApplied(1, 100));
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    /**
+     * A waiting read returns as soon as the slot it waits for is applied by another thread.
+     */
+    public void testAwaitAppliedReturnsOnceApplied() throws Exception {
+        PaxosLog log = new PaxosLog();
+        Future<Boolean> read = this.executor.submit(() -> log.awaitApplied(1, 5000));
+        log.choose(chosen(0, "a"));
+        applyAll(log);
+        Thread.sleep(50);
+        assertFalse(read.isDone());
+        log.choose(chosen(1, "b"));
+        applyAll(log);
+        assertTrue(read.get(2, TimeUnit.SECONDS));
+        assertTrue(log.awaitApplied(0, 0));
+    }
+
+    /**
+     * The learner chooses a slot once the configured accept quorum of distinct acceptors accepted
+     * the same ballot, whatever the size of the quorum.
+     */
+    public void testVoteCompletesAcceptQuorum() {
+        PaxosLog log = new PaxosLog();
+        Operation single = chosen(0, "a");
+        single.setProposalId(5);
+        assertTrue(log.vote(single, 0, 1));
+
+        Operation operation = chosen(1, "b");
+        operation.setProposalId(5);
+        assertFalse(log.vote(operation, 0, 2));
+        assertFalse(log.vote(operation, 0, 2));
+        Operation older = chosen(1, "b");
+        older.setProposalId(4);
+        assertFalse(log.vote(older, 1, 2));
+        assertTrue(log.vote(operation, 2, 2));
+        // Late votes for a chosen slot do not report the quorum again
+        log.choose(operation);
+        assertFalse(log.vote(operation, 1, 2));
+    }
+
+    /**
+     * Compaction only drops applied slots, and requests for dropped slots are rejected.
+     */
+    public void testCompactDropsAppliedSlots() throws Exception {
+        PaxosLog log = new PaxosLog();
+        for (long slot = 0; slot < 3; slot++) {
+            log.choose(chosen(slot, "k" + slot));
+        }
+        log.pollApplicable();
+        log.pollApplicable();
+        log.compact(5);
+        assertEquals(1, log.getCompactedIndex());
+        try {
+            log.promise(1, 10);
+            fail("Promise given for a compacted slot");
+        } catch (RemoteBusinessException e) {
+            // Expected
+        }
+        try {
+            log.accept(chosen(0, "a"));
+            fail("Accept made for a compacted slot");
+        } catch (RemoteBusinessException e) {
+            // Expected
+        }
+        assertNull(log.promise(3, 10));
+        assertEquals(1, log.chosenFrom(2, 10).size());
+    }
+
+    /**
+     * A checkpoint rewrites the state left after compaction, so a restart recovers it although
+     * the segments before the checkpoint were deleted.
+     */
+    public void testCheckpointKeepsStateAfterCompaction() throws Exception {
+        File directory = Files.createTempDirectory("paxos-log-test").toFile();
+        try {
+            PaxosLog log = new PaxosLog();
+            log.recover(new WriteAheadLog(directory, 256));
+            log.promise(7, 10);
+            for (long slot = 0; slot < 5; slot++) {
+                log.choose(chosen(slot, "k" + slot));
+                applyAll(log);
+                // A promise in every slot syncs the chosen records before it, each flush fills a segment
+                log.promise(slot + 10, 1);
+            }
+            int segments = directory.listFiles().length;
+            log.compact(3);
+            log.checkpoint();
+            assertTrue(directory.listFiles().length < segments);
+
+            PaxosLog restarted = new PaxosLog();
+            restarted.restore(4, 3);
+            restarted.recover(new WriteAheadLog(directory, 256));
+            assertEquals("k4", restarted.chosenFrom(4, 1).get(0).getKey());
+            try {
+                restarted.promise(7, 10);
+                fail("Promise recovered after the checkpoint was broken");
+            } catch (RemoteBusinessException e) {
+                // Expected
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * A replica that missed slots stops applying at the first hole and applies everything once it
+     * learned the missing values from a peer in batches, as the gap repair does.
+     */
+    public void testHoleIsRepairedFromPeer() {
+        PaxosLog peer = new PaxosLog();
+        PaxosLog lagging = new PaxosLog();
+        for (long slot = 0; slot < 6; slot++) {
+            peer.choose(chosen(slot, "k" + slot));
+            if (slot != 2 && slot != 4) {
+                lagging.choose(chosen(slot, "k" + slot));
+            }
+        }
+        applyAll(peer);
+        applyAll(lagging);
+        assertEquals(1, lagging.getAppliedIndex());
+        assertTrue(lagging.getChosenIndex() > lagging.getAppliedIndex());
+        assertEquals(2, lagging.firstUnchosenSlot());
+        List<Operation> batch;
+        while (!(batch = peer.chosenFrom(lagging.getAppliedIndex() + 1, 2)).isEmpty()) {
+            assertTrue(batch.size() <= 2);
+            for (Operation operation : batch) {
+                lagging.choose(operation);
+            }
+            applyAll(lagging);
+        }
+        assertEquals(5, lagging.getAppliedIndex());
+        assertEquals(6, lagging.firstUnchosenSlot());
+    }
+
+    /**
+     * A peer only serves values up to its own first hole, so a repair never skips a slot.
+     */
+    public void testChosenFromStopsAtHole() {
+        PaxosLog log = new PaxosLog();
+        log.choose(chosen(0, "a"));
+        log.choose(chosen(1, "b"));
+        log.choose(chosen(3, "d"));
+        assertEquals(2, log.chosenFrom(0, 10).size());
+        assertEquals(0, log.chosenFrom(2, 10).size());
+        assertEquals("d", log.chosenFrom(3, 10).get(0).getKey());
+    }
+
+    /**
+     * Local proposers fill holes first and never get the same slot.
+     */
+    public void testClaimSkipsChosenAndClaimedSlots() {
+        PaxosLog log = new PaxosLog();
+        log.choose(chosen(0, "a"));
+        log.choose(chosen(2, "c"));
+        assertEquals(1, log.claimFirstUnchosenSlot());
+        assertEquals(3, log.claimFirstUnchosenSlot());
+        log.release(1);
+        assertEquals(1, log.claimFirstUnchosenSlot());
+    }
+
+    private static void deleteDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
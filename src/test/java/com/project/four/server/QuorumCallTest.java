@@ -0,0 +1,220 @@
+package com.project.four.server;
+
+import com.project.four.interfaces.AcceptorInterface;
+import com.project.four.utills.PaxosRejectException;
+import com.project.four.utills.RemoteBusinessException;
+import junit.framework.TestCase;
+
+import java.lang.reflect.Proxy;
+import java.rmi.ServerException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Unit tests for the parallel quorum calls to acceptors.
+ */
+public class QuorumCallTest extends TestCase {
+    private ExecutorService executor;
+    // Released at the end of a test so that acceptors that never answer do not keep their threads
+    private CountDownLatch release;
+
+    @Override
+    protected void setUp() {
+        this.executor = Executors.newCachedThreadPool();
+        this.release = new CountDownLatch(1);
+    }
+
+    @Override
+    protected void tearDown() {
+        this.release.countDown();
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Creates acceptors whose only purpose is to be told apart by the call under test.
+     */
+    static List<AcceptorInterface> acceptors(int count) {
+        List<AcceptorInterface> acceptors = new ArrayList<AcceptorInterface>();
+        for (int index = 0; index < count; index++) {
+            acceptors.add((AcceptorInterface) Proxy.newProxyInstance(AcceptorInterface.class.getClassLoader(),
+                    new Class<?>[]{AcceptorInterface.class}, (proxy, method, args) -> switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> null;
+                    }));
+        }
+        return acceptors;
+    }
+
+    private void hang() throws InterruptedException {
+        this.release.await(10, TimeUnit.SECONDS);
+    }
+
+    public void testReturnsOnceQuorumReplied() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        long start = System.currentTimeMillis();
+        List<Integer> replies = quorumCall.call(acceptors, 2, acceptor -> {
+            int index = acceptors.indexOf(acceptor);
+            if (index == 2) {
+                this.hang();
+            }
+            return index;
+        });
+        assertEquals(2, replies.size());
+        assertTrue(replies.containsAll(Arrays.asList(0, 1)));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    /**
+     * A flexible accept quorum of one returns with the first reply.
+     */
+    public void testSmallQuorumReturnsAfterOneReply() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        long start = System.currentTimeMillis();
+        List<Integer> replies = quorumCall.call(acceptors, 1, acceptor -> {
+            int index = acceptors.indexOf(acceptor);
+            if (index > 0) {
+                this.hang();
+            }
+            return index;
+        });
+        assertEquals(Arrays.asList(0), replies);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+
+    public void testMissingAcceptorsCountAsFailed() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        acceptors.set(1, null);
+        acceptors.set(2, null);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        try {
+            quorumCall.call(acceptors, 2, acceptor -> true);
+            fail("Quorum of 2 reached with one acceptor");
+        } catch (RemoteBusinessException e) {
+            // Expected
+        }
+    }
+
+    public void testFailsAsSoonAsQuorumIsOutOfReach() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        long start = System.currentTimeMillis();
+        try {
+            quorumCall.call(acceptors, 2, acceptor -> {
+                int index = acceptors.indexOf(acceptor);
+                if (index == 0) {
+                    this.hang();
+                }
+                throw new RemoteBusinessException("Acceptor " + index + " down");
+            });
+            fail("Quorum reached with two failed acceptors");
+        } catch (RemoteBusinessException e) {
+            // The call does not wait for the acceptor that hangs
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    public void testTimeoutExpires() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 200);
+        long start = System.currentTimeMillis();
+        try {
+            quorumCall.call(acceptors, 2, acceptor -> {
+                if (acceptors.indexOf(acceptor) > 0) {
+                    this.hang();
+                }
+                return true;
+            });
+            fail("Quorum reached with one answer");
+        } catch (RemoteBusinessException e) {
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    /**
+     * A missed quorum reports the highest ballot the rejecting acceptors promised, even when the
+     * rejection arrives wrapped like an RMI failure.
+     */
+    public void testRejectionReportsHighestPromisedBallot() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        try {
+            quorumCall.call(acceptors, 2, acceptor -> switch (acceptors.indexOf(acceptor)) {
+                case 0 -> throw new PaxosRejectException("Rejected", 7);
+                case 1 -> throw new ServerException("Wrapped", new PaxosRejectException("Rejected", 9));
+                default -> true;
+            });
+            fail("Quorum reached with two rejections");
+        } catch (PaxosRejectException e) {
+            assertEquals(9, e.getPromisedBallot());
+        }
+    }
+
+    /**
+     * Measures the round trips of three acceptors, the last one being much slower than the others.
+     */
+    private static void measure(QuorumCall quorumCall, List<AcceptorInterface> acceptors) throws Exception {
+        quorumCall.callAll(acceptors, 3, acceptor -> {
+            Thread.sleep(acceptors.indexOf(acceptor) == 2 ? 200 : 20);
+            return true;
+        });
+    }
+
+    public void testThriftyCallsOnlyFastestQuorum() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        measure(quorumCall, acceptors);
+        AtomicIntegerArray calls = new AtomicIntegerArray(3);
+        List<Integer> replies = quorumCall.callThrifty(acceptors, 2, acceptor -> {
+            int index = acceptors.indexOf(acceptor);
+            calls.incrementAndGet(index);
+            return index;
+        });
+        assertTrue(replies.containsAll(Arrays.asList(0, 1)));
+        Thread.sleep(100);
+        assertEquals(0, calls.get(2));
+    }
+
+    public void testThriftyFallsBackOnFailure() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        measure(quorumCall, acceptors);
+        List<Integer> replies = quorumCall.callThrifty(acceptors, 2, acceptor -> {
+            int index = acceptors.indexOf(acceptor);
+            if (index == 0) {
+                throw new RemoteBusinessException("Acceptor 0 down");
+            }
+            return index;
+        });
+        assertEquals(2, replies.size());
+        assertTrue(replies.containsAll(Arrays.asList(1, 2)));
+    }
+
+    /**
+     * An acceptor that takes much longer than its measured round trip is given up on without
+     * waiting for the timeout.
+     */
+    public void testThriftyFallsBackOnSlowAcceptor() throws Exception {
+        List<AcceptorInterface> acceptors = acceptors(3);
+        QuorumCall quorumCall = new QuorumCall(this.executor, 5000);
+        measure(quorumCall, acceptors);
+        long start = System.currentTimeMillis();
+        List<Integer> replies = quorumCall.callThrifty(acceptors, 2, acceptor -> {
+            int index = acceptors.indexOf(acceptor);
+            if (index == 1) {
+                this.hang();
+            }
+            return index;
+        });
+        assertTrue(replies.containsAll(Arrays.asList(0, 2)));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+    }
+}
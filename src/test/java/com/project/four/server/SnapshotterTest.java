@@ -0,0 +1,217 @@
+package com.project.four.server;
+
+import com.project.four.interfaces.LearnerInterface;
+import com.project.four.utills.SnapshotChunk;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for copy-on-write snapshots of the store, kept in a temporary directory.
+ */
+public class SnapshotterTest extends TestCase {
+    private File directory;
+    private final Map<String, Object> store = new ConcurrentHashMap<String, Object>();
+    private ExecutorService executor;
+
+    /**
+     * Serves the chunks of a snapshot, possibly changing them on the way.
+     */
+    interface ChunkSource {
+        SnapshotChunk chunk(long index, long offset, int length) throws IOException;
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("snapshot-test").toFile();
+        this.store.put("a", "1");
+        this.store.put("b", "2");
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() {
+        this.executor.shutdownNow();
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    /**
+     * Writes applied while the snapshot is taken do not show up in it.
+     */
+    public void testSnapshotKeepsValuesAtIndex() throws IOException {
+        Snapshotter snapshotter = new Snapshotter(this.store, this.directory, 10);
+        assertTrue(snapshotter.begin(5, null));
+        snapshotter.beforeWrite("a");
+        this.store.put("a", "changed");
+        snapshotter.beforeWrite("a");
+        this.store.put("a", "changed again");
+        snapshotter.beforeWrite("b");
+        this.store.remove("b");
+        snapshotter.beforeWrite("c");
+        this.store.put("c", "3");
+        assertEquals(5, snapshotter.write().getIndex());
+
+        Snapshotter.Snapshot loaded = new Snapshotter(new ConcurrentHashMap<String, Object>(), this.directory, 10).load();
+        assertEquals(5, loaded.getIndex());
+        assertEquals(Map.of("a", "1", "b", "2"), loaded.getData());
+    }
+
+    /**
+     * Once the snapshot is written, later writes are not kept for it anymore.
+     */
+    public void testWritesAfterSnapshotAreNotKept() throws IOException {
+        Snapshotter snapshotter = new Snapshotter(this.store, this.directory, 10);
+        snapshotter.begin(5, null);
+        snapshotter.write();
+        snapshotter.beforeWrite("a");
+        this.store.put("a", "changed");
+        snapshotter.begin(15, null);
+        snapshotter.write();
+        assertEquals("changed", snapshotter.load().getData().get("a"));
+    }
+
+    public void testOnlyOneSnapshotAtATime() throws IOException {
+        Snapshotter snapshotter = new Snapshotter(this.store, this.directory, 10);
+        assertTrue(snapshotter.begin(5, null));
+        assertFalse(snapshotter.begin(6, null));
+        snapshotter.write();
+        assertTrue(snapshotter.begin(6, null));
+    }
+
+    /**
+     * A snapshot is due every interval of applied slots, and the log keeps the slots since the
+     * previous snapshot.
+     */
+    public void testIntervalAndLogStart() throws IOException {
+        Snapshotter snapshotter = new Snapshotter(this.store, this.directory, 10);
+        assertFalse(snapshotter.due(8));
+        assertTrue(snapshotter.due(9));
+        snapshotter.begin(9, null);
+        assertEquals(-1, snapshotter.write().getLogStart());
+        assertFalse(snapshotter.due(18));
+        assertTrue(snapshotter.due(19));
+        snapshotter.begin(19, null);
+        assertEquals(9, snapshotter.write().getLogStart());
+    }
+
+    public void testLoadRestoresTokens() throws IOException {
+        TreeMap<Long, Integer> tokens = new TreeMap<Long, Integer>(Map.of(10L, 0, 20L, 1));
+        Snapshotter snapshotter = new Snapshotter(this.store, this.directory, 10);
+        snapshotter.begin(5, tokens);
+        snapshotter.write();
+        Snapshotter restarted = new Snapshotter(new ConcurrentHashMap<String, Object>(), this.directory, 10);
+        assertEquals(tokens, restarted.load().getTokens());
+        assertEquals(5, restarted.getLatest().getIndex());
+        assertEquals(1, this.directory.listFiles().length);
+    }
+
+    public void testLoadWithoutSnapshot() throws IOException {
+        assertNull(new Snapshotter(this.store, this.directory, 10).load());
+    }
+
+    /**
+     * Creates a peer whose learner only serves snapshot chunks.
+     */
+    private static LearnerInterface peer(ChunkSource source) {
+        return (LearnerInterface) Proxy.newProxyInstance(LearnerInterface.class.getClassLoader(),
+                new Class<?>[]{LearnerInterface.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "snapshotChunk" -> source.chunk((long) args[0], (long) args[1], (int) args[2]);
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> null;
+                });
+    }
+
+    /**
+     * Takes a snapshot of a store larger than one chunk, kept in memory.
+     */
+    private static Snapshotter sender(long index) throws IOException {
+        Map<String, Object> store = new ConcurrentHashMap<String, Object>();
+        for (int key = 0; key < 5000; key++) {
+            store.put("k" + key, "value-" + key + "-" + "x".repeat(500));
+        }
+        Snapshotter sender = new Snapshotter(store, null, 10);
+        sender.begin(index, null);
+        sender.write();
+        return sender;
+    }
+
+    public void testReceiveStreamsWholeSnapshot() throws IOException {
+        Snapshotter sender = sender(42);
+        assertTrue(sender.getLatest().getSize() > 2 * (1 << 20));
+        Snapshotter receiver = new Snapshotter(new ConcurrentHashMap<String, Object>(), this.directory, 10);
+        Snapshotter.Snapshot received = receiver.receive(peer(sender::chunk), this.executor, 5000);
+        assertEquals(42, received.getIndex());
+        assertEquals(5000, received.getData().size());
+        assertEquals(sender.getLatest().getChecksum(), receiver.getLatest().getChecksum());
+        // The receiver serves and reloads what it received
+        assertEquals(sender.chunk(42, 0, 0).getTotalSize(), receiver.chunk(-1, 0, 0).getTotalSize());
+        assertEquals(new HashMap<String, Object>(received.getData()), receiver.load().getData());
+    }
+
+    public void testReceiveFromPeerWithoutSnapshot() throws IOException {
+        Snapshotter empty = new Snapshotter(this.store, null, 10);
+        assertNull(empty.chunk(-1, 0, 0));
+        Snapshotter receiver = new Snapshotter(new ConcurrentHashMap<String, Object>(), this.directory, 10);
+        assertNull(receiver.receive(peer(empty::chunk), this.executor, 5000));
+        assertNull(receiver.getLatest());
+    }
+
+    /**
+     * A chunk damaged on the way is requested once more.
+     */
+    public void testDamagedChunkIsRequestedAgain() throws IOException {
+        Snapshotter sender = sender(42);
+        AtomicInteger damaged = new AtomicInteger();
+        Snapshotter receiver = new Snapshotter(new ConcurrentHashMap<String, Object>(), null, 10);
+        Snapshotter.Snapshot received = receiver.receive(peer((index, offset, length) -> {
+            SnapshotChunk chunk = sender.chunk(index, offset, length);
+            if (offset > 0 && damaged.getAndIncrement() == 0) {
+                byte[] data = chunk.getData().clone();
+                data[0] ^= 1;
+                return new SnapshotChunk(chunk.getIndex(), chunk.getLogStart(), chunk.getTotalSize(), chunk.getTotalChecksum(), chunk.getOffset(), data, chunk.getChecksum());
+            }
+            return chunk;
+        }), this.executor, 5000);
+        assertEquals(5000, received.getData().size());
+        assertTrue(damaged.get() > 1);
+    }
+
+    /**
+     * A snapshot the sender replaced during the transfer is not installed half way.
+     */
+    public void testReplacedSnapshotFailsTransfer() throws IOException {
+        Snapshotter sender = sender(42);
+        Snapshotter receiver = new Snapshotter(new ConcurrentHashMap<String, Object>(), this.directory, 10);
+        try {
+            receiver.receive(peer((index, offset, length) -> {
+                if (offset > 0 && sender.getLatest().getIndex() == 42) {
+                    sender.begin(52, null);
+                    sender.write();
+                }
+                return sender.chunk(index, offset, length);
+            }), this.executor, 5000);
+            fail("Replaced snapshot installed");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertNull(receiver.getLatest());
+        assertEquals(0, this.directory.listFiles((dir, name) -> !name.endsWith(".tmp")).length);
+    }
+}
@@ -0,0 +1,256 @@
+package com.project.four.server;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the segmented write-ahead log, on a temporary directory.
+ */
+public class WriteAheadLogTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("wal-test").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+        File[] files = this.directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        this.directory.delete();
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replays a directory with a new log, as a restarted node does.
+     *
+     * @return Types and payloads of the records, as "type:payload".
+     */
+    static List<String> replay(File directory, long segmentSize) throws IOException {
+        List<String> records = new ArrayList<String>();
+        new WriteAheadLog(directory, segmentSize).replay((type, payload) -> records.add(type + ":" + string(payload)));
+        return records;
+    }
+
+    private File[] segments() {
+        File[] files = this.directory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    public void testReplayReturnsRecordsInOrder() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        wal.append((byte) 1, bytes("a"));
+        wal.append((byte) 2, bytes(""));
+        wal.sync(wal.append((byte) 3, bytes("c")));
+        wal.close();
+        assertEquals(Arrays.asList("1:a", "2:", "3:c"), replay(this.directory, 1 << 20));
+    }
+
+    /**
+     * Records that were only appended are not on disk, a sync makes them durable.
+     */
+    public void testRecordsAreDurableOnlyAfterSync() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        wal.append((byte) 1, bytes("a"));
+        assertEquals(Collections.emptyList(), replay(this.directory, 1 << 20));
+        wal.sync(wal.mark());
+        assertEquals(Arrays.asList("1:a"), replay(this.directory, 1 << 20));
+    }
+
+    /**
+     * A record that was only partly written before a crash is cut off on replay.
+     */
+    public void testTornRecordIsTruncated() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        wal.append((byte) 1, bytes("a"));
+        wal.sync(wal.append((byte) 1, bytes("b")));
+        wal.close();
+        File segment = this.segments()[0];
+        long intact = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // Header of a 100 byte record followed by only a few of its bytes
+            file.seek(intact);
+            file.writeInt(100);
+            file.writeInt(0);
+            file.write(new byte[12]);
+        }
+        assertEquals(Arrays.asList("1:a", "1:b"), replay(this.directory, 1 << 20));
+        assertEquals(intact, segment.length());
+    }
+
+    /**
+     * A complete record whose content does not match its checksum ends the replay.
+     */
+    public void testCorruptRecordEndsReplay() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        wal.sync(wal.append((byte) 1, bytes("a")));
+        wal.sync(wal.append((byte) 1, bytes("b")));
+        wal.close();
+        File segment = this.segments()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(segment.length() - 1);
+            file.write('x');
+        }
+        assertEquals(Arrays.asList("1:a"), replay(this.directory, 1 << 20));
+    }
+
+    /**
+     * Syncing a record makes every record appended before it durable, whoever appended it.
+     */
+    public void testSyncCoversEarlierRecords() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        long first = wal.append((byte) 1, bytes("a"));
+        long second = wal.append((byte) 1, bytes("b"));
+        wal.sync(second);
+        assertEquals(2, replay(this.directory, 1 << 20).size());
+        // Already durable, returns without writing
+        wal.sync(first);
+    }
+
+    /**
+     * Concurrent writers all return from their sync with every record on disk.
+     */
+    public void testConcurrentSyncs() throws Exception {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writers = new ArrayList<Future<?>>();
+            for (int writer = 0; writer < 8; writer++) {
+                int id = writer;
+                writers.add(executor.submit(() -> {
+                    for (int record = 0; record < 50; record++) {
+                        wal.sync(wal.append((byte) 1, bytes(id + "-" + record)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<String> records = replay(this.directory, 1 << 20);
+        assertEquals(400, records.size());
+        for (int writer = 0; writer < 8; writer++) {
+            assertTrue(records.contains("1:" + writer + "-49"));
+        }
+    }
+
+    /**
+     * A log opened on an existing directory continues in a new segment after the replayed ones.
+     */
+    public void testRestartContinuesInNewSegment() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        wal.sync(wal.append((byte) 1, bytes("a")));
+        wal.close();
+        WriteAheadLog restarted = new WriteAheadLog(this.directory, 1 << 20);
+        restarted.replay((type, payload) -> { });
+        restarted.sync(restarted.append((byte) 1, bytes("b")));
+        restarted.close();
+        assertEquals(2, this.segments().length);
+        assertEquals(Arrays.asList("1:a", "1:b"), replay(this.directory, 1 << 20));
+    }
+
+    /**
+     * A keyed record can be read back once it is on disk, and the latest record of a key wins.
+     */
+    public void testReadByKey() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 1 << 20);
+        long seq = wal.append((byte) 1, 7, bytes("first"));
+        assertNull(wal.read(7));
+        wal.sync(seq);
+        assertEquals("first", string(wal.read(7)));
+        wal.sync(wal.append((byte) 1, 7, bytes("second")));
+        assertEquals("second", string(wal.read(7)));
+        assertNull(wal.read(8));
+    }
+
+    /**
+     * Small segments roll over on every flush, records stay readable from the segment holding them.
+     */
+    public void testReadAcrossSegments() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 64);
+        for (int key = 0; key < 10; key++) {
+            wal.sync(wal.append((byte) 1, key, bytes("value-" + key)));
+        }
+        assertTrue(this.segments().length > 1);
+        for (int key = 0; key < 10; key++) {
+            assertEquals("value-" + key, string(wal.read(key)));
+        }
+        wal.close();
+        assertEquals(10, replay(this.directory, 64).size());
+    }
+
+    /**
+     * Replay rebuilds the key index, so a restarted log reads records written before the restart.
+     */
+    public void testReadAfterReplay() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 64);
+        for (int key = 0; key < 5; key++) {
+            wal.sync(wal.append((byte) 1, key, bytes("value-" + key)));
+        }
+        wal.close();
+        WriteAheadLog restarted = new WriteAheadLog(this.directory, 64);
+        restarted.replay((type, payload) -> { });
+        for (int key = 0; key < 5; key++) {
+            assertEquals("value-" + key, string(restarted.read(key)));
+        }
+        ByteBuffer payload = restarted.read(3);
+        assertEquals("value-3", new String(WriteAheadLog.inputStream(payload).readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Only closed segments whose records are all covered by the mark are deleted. Every record
+     * fills a segment of its own here.
+     */
+    public void testDeleteThroughKeepsNewerSegments() throws IOException {
+        WriteAheadLog wal = new WriteAheadLog(this.directory, 32);
+        for (int key = 0; key < 4; key++) {
+            wal.sync(wal.append((byte) 1, key, bytes("value-" + key)));
+        }
+        long mark = wal.mark();
+        for (int key = 4; key < 6; key++) {
+            wal.sync(wal.append((byte) 1, key, bytes("value-" + key)));
+        }
+        assertEquals(6, this.segments().length);
+        wal.deleteThrough(mark);
+        assertEquals(2, this.segments().length);
+        assertNull(wal.read(0));
+        assertEquals("value-5", string(wal.read(5)));
+        wal.deleteThrough(wal.mark());
+        // The segment still written to is kept
+        assertEquals(1, this.segments().length);
+        wal.close();
+        assertEquals(Arrays.asList("1:value-5"), replay(this.directory, 32));
+    }
+}
@@ -0,0 +1,42 @@
+package com.project.four.utills;
+
+import com.project.four.server.ProjectEnums.MethodType;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Unit tests for comparing operations that went through serialization.
+ */
+public class OperationTest extends TestCase {
+
+    private static Operation roundTrip(Operation operation) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(operation);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Operation) in.readObject();
+        }
+    }
+
+    /**
+     * A RANGE operation read back from the write-ahead log or received over RMI is the same operation.
+     */
+    public void testDeserializedRangeOperationIsEqual() throws Exception {
+        Operation range = new Operation(MethodType.RANGE, MethodType.RANGE.name(), new long[]{10, 20, 1}, "internal");
+        Operation copy = roundTrip(range);
+        assertEquals(range, copy);
+        assertEquals(range.hashCode(), copy.hashCode());
+        assertFalse(range.equals(new Operation(MethodType.RANGE, MethodType.RANGE.name(), new long[]{10, 20, 0}, "internal")));
+    }
+
+    public void testPlainValuesCompareByEquals() throws Exception {
+        Operation put = new Operation(MethodType.PUT, "k", "v", "c");
+        assertEquals(put, roundTrip(put));
+        assertFalse(put.equals(new Operation(MethodType.PUT, "k", "w", "c")));
+    }
+}